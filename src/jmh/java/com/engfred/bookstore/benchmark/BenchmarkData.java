@@ -0,0 +1,56 @@
+package com.engfred.bookstore.benchmark;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.Gender;
+import com.engfred.bookstore.data.entities.User;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+//Detached, fully populated entities shaped like a listing page: ten books per author
+final class BenchmarkData {
+
+    private static final int BOOKS_PER_AUTHOR = 10;
+
+    private BenchmarkData() {
+    }
+
+    static User author(int index) {
+        return User.builder()
+                .id(UUID.randomUUID())
+                .firstname("Author" + index)
+                .lastname("Writer" + index)
+                .email("author" + index + "@bookstore.bench")
+                .phoneNumber("+256700000000")
+                .address("Kampala")
+                .bio("Writes books")
+                .gender(Gender.PREFER_NOT_TO_SAY)
+                .createdAt(new Date())
+                .build();
+    }
+
+    static List<Book> books(int count) {
+        List<Book> books = new ArrayList<>(count);
+        User author = null;
+        for (int i = 0; i < count; i++) {
+            if (i % BOOKS_PER_AUTHOR == 0) {
+                author = author(i / BOOKS_PER_AUTHOR);
+            }
+            books.add(Book.builder()
+                    .id(UUID.randomUUID())
+                    .title("Book " + i)
+                    .description("A description of book " + i)
+                    .genre("Fiction")
+                    .pages(100 + i)
+                    .publishedAt(new Date())
+                    .isbn("isbn-" + i)
+                    .coverImageUrl("https://res.cloudinary.com/bookstore/" + i + ".jpg")
+                    .author(author)
+                    .createdAt(new Date())
+                    .build());
+        }
+        return books;
+    }
+}
@@ -0,0 +1,115 @@
+package com.engfred.bookstore.benchmark;
+
+import com.engfred.bookstore.BookstoreApplication;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.Gender;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.service.impl.InMemoryBookSearchStrategy;
+import com.engfred.bookstore.service.impl.JpqlBookSearchStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * /books/search resolved by the JPQL LIKE query versus the in-memory inverted index, first page of 10 by title.
+ * Runs against the in-memory H2 database of the test configuration, so the JPQL numbers are a lower bound
+ * of what a networked PostgreSQL costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookSearchBenchmark {
+
+    private static final String[] WORDS = {"war", "peace", "river", "night", "kingdom", "shadow", "garden", "storm",
+            "empire", "silence", "harvest", "journey", "mountain", "letters", "voyage", "season"};
+    private static final String[] GENRES = {"Fiction", "Fantasy", "History", "Poetry", "Biography", "Science"};
+    private static final String[] NAMES = {"Achebe", "Tolkien", "Ngugi", "Adichie", "Soyinka", "Okri", "Baldwin", "Woolf"};
+
+    @Param({"10000"})
+    private int books;
+
+    @Param({"tolk", "fantasy storm"})
+    private String keyword;
+
+    private ConfigurableApplicationContext context;
+    private JpqlBookSearchStrategy jpql;
+    private InMemoryBookSearchStrategy invertedIndex;
+    private final Pageable pageable = PageRequest.of(0, 10, Sort.by("title"));
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(BookstoreApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN", "spring.jpa.properties.hibernate.generate_statistics=false")
+                .run();
+        BooksRepository booksRepository = context.getBean(BooksRepository.class);
+        seed(context.getBean(UserRepository.class), booksRepository);
+
+        jpql = new JpqlBookSearchStrategy(booksRepository);
+        invertedIndex = new InMemoryBookSearchStrategy(booksRepository, context.getBean(JdbcTemplate.class));
+        invertedIndex.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Book> jpqlQuery() {
+        return jpql.search(keyword, pageable);
+    }
+
+    @Benchmark
+    public Page<Book> invertedIndex() {
+        return invertedIndex.search(keyword, pageable);
+    }
+
+    private void seed(UserRepository userRepository, BooksRepository booksRepository) {
+        Random random = new Random(42);
+        List<User> authors = new ArrayList<>();
+        for (int i = 0; i < NAMES.length * 10; i++) {
+            authors.add(userRepository.save(User.builder()
+                    .firstname("Author" + i)
+                    .lastname(NAMES[i % NAMES.length])
+                    .email("author" + i + "@bookstore.bench")
+                    .phoneNumber("+256700000000")
+                    .address("Kampala")
+                    .password("secret")
+                    .gender(Gender.PREFER_NOT_TO_SAY)
+                    .build()));
+        }
+
+        List<Book> batch = new ArrayList<>();
+        for (int i = 0; i < books; i++) {
+            batch.add(Book.builder()
+                    .title(WORDS[random.nextInt(WORDS.length)] + " of " + WORDS[random.nextInt(WORDS.length)] + " " + i)
+                    .genre(GENRES[random.nextInt(GENRES.length)])
+                    .pages(100 + random.nextInt(900))
+                    .publishedAt(new Date())
+                    .isbn("isbn-" + i)
+                    .author(authors.get(random.nextInt(authors.size())))
+                    .build());
+            if (batch.size() == 1000) {
+                booksRepository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        booksRepository.saveAll(batch);
+    }
+}
@@ -0,0 +1,144 @@
+package com.engfred.bookstore.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 64 request threads reading pages of GET /books (the listing query with its author join) through a Hikari pool,
+ * against PostgreSQL in a Testcontainers container, or the database of -Dbenchmark.db.url (with .username and
+ * .password) when Docker isn't at hand. The schema is the Flyway migrations', seeded with 100k books.
+ * pool: "cores" is the prod sizing, (cores * 2) + 1 (DataSourcePoolConfig), "64" gives every thread its connection.
+ * prepareThreshold: 3 is the prod setting (server-side prepared statements), 0 parses and plans every execution.
+ * The time per page includes the wait for a connection, reported apart in the secondary connectionWait metrics:
+ * a smaller pool waits longer in Hikari but keeps the database from thrashing on more connections than cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(64)
+public class ConnectionPoolBenchmark {
+
+    private static final int AUTHORS = 10_000;
+    private static final int BOOKS_PER_AUTHOR = 10;
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGES = 500;
+    private static final String PAGE_QUERY = """
+            SELECT b.id, b.title, b.genre, b.pages, b.published_at, b.isbn, b.created_at, b.updated_at, b.version,
+                   u.id, u.firstname, u.lastname, u.email, u.created_at, u.updated_at, u.version
+            FROM books b JOIN users u ON u.id = b.author_id
+            ORDER BY b.title, b.id
+            OFFSET ? LIMIT ?
+            """;
+
+    @Param({"cores", "64"})
+    public String pool;
+
+    @Param({"3", "0"})
+    public int prepareThreshold;
+
+    private PostgreSQLContainer<?> postgres;
+    private HikariDataSource dataSource;
+
+    //Summed over the threads of an iteration, connectionWaitMicros / connections is the mean wait per page
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ConnectionWait {
+        public long connectionWaitMicros;
+        public long connections;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            connectionWaitMicros = 0;
+            connections = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String url = System.getProperty("benchmark.db.url");
+        String username = System.getProperty("benchmark.db.username");
+        String password = System.getProperty("benchmark.db.password");
+        if (url == null) {
+            postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+            postgres.start();
+            url = postgres.getJdbcUrl();
+            username = postgres.getUsername();
+            password = postgres.getPassword();
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(pool.equals("cores") ? Runtime.getRuntime().availableProcessors() * 2 + 1 : Integer.parseInt(pool));
+        config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(10));
+        config.addDataSourceProperty("prepareThreshold", prepareThreshold);
+        config.addDataSourceProperty("preparedStatementCacheQueries", 512);
+        config.addDataSourceProperty("reWriteBatchedInserts", true);
+        dataSource = new HikariDataSource(config);
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        seed(new JdbcTemplate(dataSource));
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        if (jdbcTemplate.queryForObject("SELECT count(*) FROM books", Long.class) >= (long) AUTHORS * BOOKS_PER_AUTHOR) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO users (id, firstname, lastname, email, phone_number, address, password, gender, created_at, updated_at)
+                SELECT gen_random_uuid(), 'Author' || i, 'Writer' || i, 'author' || i || '@bookstore.bench', '+256700000000',
+                       'Kampala', 'secret', 'PREFER_NOT_TO_SAY', now(), now()
+                FROM generate_series(1, ?) i
+                """, AUTHORS);
+        jdbcTemplate.update("""
+                INSERT INTO books (id, title, genre, pages, published_at, isbn, created_at, updated_at, author_id)
+                SELECT gen_random_uuid(), initcap(substr(md5(u.id::text || b), 1, 16)), 'Fiction', 100 + b, now(),
+                       'isbn-' || md5(u.id::text || b), now(), now(), u.id
+                FROM users u CROSS JOIN generate_series(1, ?) b
+                """, BOOKS_PER_AUTHOR);
+        jdbcTemplate.execute("VACUUM ANALYZE");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @Benchmark
+    public int listingPage(ConnectionWait wait) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            wait.connectionWaitMicros += TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            wait.connections++;
+            try (PreparedStatement statement = connection.prepareStatement(PAGE_QUERY)) {
+                statement.setInt(1, ThreadLocalRandom.current().nextInt(PAGES) * PAGE_SIZE);
+                statement.setInt(2, PAGE_SIZE);
+                int rows = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        rows++;
+                    }
+                }
+                return rows;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.engfred.bookstore.benchmark;
+
+import com.engfred.bookstore.dto.request.CreateBookRequest;
+import com.engfred.bookstore.exceptionHandler.GlobalExceptionHandler;
+import jakarta.persistence.EntityNotFoundException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Error response building in GlobalExceptionHandler for the three most frequent failures:
+ * a rejected request body, a missing entity and an unexpected exception.
+ * The exceptions are created once, so their stack trace capture is not part of the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExceptionHandlerBenchmark {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+    private MethodArgumentNotValidException validationException;
+    private EntityNotFoundException notFoundException;
+    private IllegalStateException unexpectedException;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchMethodException {
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(new CreateBookRequest(), "createBookRequest");
+        bindingResult.rejectValue("title", "NotBlank", "Title is required");
+        bindingResult.rejectValue("genre", "NotBlank", "Genre is required");
+        bindingResult.rejectValue("pages", "Min", "Pages must be at least 1");
+        MethodParameter parameter = new MethodParameter(
+                ExceptionHandlerBenchmark.class.getDeclaredMethod("createBook", CreateBookRequest.class), 0);
+        validationException = new MethodArgumentNotValidException(parameter, bindingResult);
+
+        notFoundException = new EntityNotFoundException("Book not found");
+        unexpectedException = new IllegalStateException("Connection reset");
+    }
+
+    @Benchmark
+    public ResponseEntity<Map<String, Object>> validationFailure() {
+        return handler.handleValidationExceptions(validationException);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> entityNotFound() {
+        return handler.handleNotFound(notFoundException);
+    }
+
+    @Benchmark
+    public ResponseEntity<Map<String, String>> unexpectedFailure() {
+        return handler.handleGeneralException(unexpectedException);
+    }
+
+    //Stands in for the controller method whose @Valid parameter was rejected
+    @SuppressWarnings("unused")
+    private void createBook(CreateBookRequest request) {
+    }
+}
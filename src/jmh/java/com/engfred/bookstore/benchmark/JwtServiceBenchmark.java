@@ -0,0 +1,64 @@
+package com.engfred.bookstore.benchmark;
+
+import com.engfred.bookstore.service.JwtService;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Encoders;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.AccessDeniedException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Token issuing at login and token reading on every authenticated request.
+ * extractEmailVerified runs with the verified token cache disabled, so it is the full HMAC verification
+ * and claims parsing; extractEmailCached is the digest lookup a repeated token costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private JwtService cachingJwtService;
+    private JwtService verifyingJwtService;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws AccessDeniedException {
+        String secret = Encoders.BASE64.encode(Jwts.SIG.HS256.key().build().getEncoded());
+        cachingJwtService = jwtService(secret, 10_000);
+        verifyingJwtService = jwtService(secret, 0);
+        token = cachingJwtService.generateToken("reader@bookstore.bench");
+        cachingJwtService.extractEmail(token);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return cachingJwtService.generateToken("reader@bookstore.bench");
+    }
+
+    @Benchmark
+    public String extractEmailVerified() throws AccessDeniedException {
+        return verifyingJwtService.extractEmail(token);
+    }
+
+    @Benchmark
+    public String extractEmailCached() throws AccessDeniedException {
+        return cachingJwtService.extractEmail(token);
+    }
+
+    //Same wiring as the container: @Value fields, then the @PostConstruct hook
+    private static JwtService jwtService(String secret, long tokenCacheMaximumSize) {
+        JwtService jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "jwtSecret", secret);
+        ReflectionTestUtils.setField(jwtService, "jwtExpirationTime", 24L);
+        ReflectionTestUtils.setField(jwtService, "tokenCacheMaximumSize", tokenCacheMaximumSize);
+        ReflectionTestUtils.setField(jwtService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.invokeMethod(jwtService, "init");
+        return jwtService;
+    }
+}
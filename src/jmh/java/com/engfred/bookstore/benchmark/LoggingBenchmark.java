@@ -0,0 +1,129 @@
+package com.engfred.bookstore.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.engfred.bookstore.service.impl.BooksServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Request threads logging the lines of a BooksServiceImpl.getAllBooks call, four at the same time.
+ * infoLines is the former hot path (four INFO lines per call), guardedDebugLines the current one with the logger at INFO.
+ * The appender is either the console (written and flushed under its lock by the calling thread) or the prod profile's
+ * AsyncAppender in front of it. The console writes to the null device (formatting and locking only) or to a stream
+ * taking 20 us per write, the way a terminal or a container's log pipe does under load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LoggingBenchmark {
+
+    private static final String PATTERN = "%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p %t --- %logger{39} : %m%n";
+    private static final int PAGE = 1;
+    private static final int SIZE = 10;
+    private static final String SORT = "title";
+
+    private static final long SLOW_WRITE_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    @Param({"console", "async"})
+    public String appender;
+
+    @Param({"null", "slow"})
+    public String sink;
+
+    private LoggerContext context;
+    private Logger logger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws FileNotFoundException {
+        context = new LoggerContext();
+        //Set by Spring Boot's logging system in the application, events fail to render without it
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        context.start();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> console = new OutputStreamAppender<>();
+        console.setContext(context);
+        console.setName("CONSOLE");
+        console.setEncoder(encoder);
+        console.setOutputStream(sink.equals("slow")
+                ? new SlowOutputStream()
+                : new FileOutputStream(new File("/dev/null").exists() ? "/dev/null" : "NUL"));
+        console.start();
+
+        Appender<ILoggingEvent> target = console;
+        if (appender.equals("async")) {
+            //Same settings as logback-spring.xml
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setName("ASYNC_CONSOLE");
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(console);
+            async.start();
+            target = async;
+        }
+
+        ch.qos.logback.classic.Logger serviceLogger = context.getLogger(BooksServiceImpl.class);
+        serviceLogger.setLevel(ch.qos.logback.classic.Level.INFO);
+        serviceLogger.setAdditive(false);
+        serviceLogger.addAppender(target);
+        logger = serviceLogger;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void infoLines() {
+        logger.info("Fetching all books - Page: {}, Size: {}, Sort: {}", PAGE, SIZE, SORT);
+        logger.info("Fetched {} books", SIZE);
+        logger.info("Mapping {} entities to DTOs", SIZE);
+        logger.info("Mapping complete");
+    }
+
+    @Benchmark
+    public void guardedDebugLines() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Fetching all books - Page: {}, Size: {}, Sort: {}", PAGE, SIZE, SORT);
+        }
+        logger.debug("Fetched {} books", SIZE);
+        logger.debug("Mapped {} entities to DTOs", SIZE);
+    }
+
+    private static final class SlowOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+            LockSupport.parkNanos(SLOW_WRITE_NANOS);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            LockSupport.parkNanos(SLOW_WRITE_NANOS);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.engfred.bookstore.benchmark;
+
+import ch.qos.logback.classic.LoggerContext;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.response.PagingResult;
+import com.engfred.bookstore.mappers.BooksMapperImpl;
+import com.engfred.bookstore.mappers.UserMapperImpl;
+import com.engfred.bookstore.service.impl.BooksServiceImpl;
+import com.engfred.bookstore.service.impl.JpqlBookSearchStrategy;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * BooksServiceImpl.getAllBooks once the page is loaded: the toPagingResult mapping of a Page<Book>
+ * into PagingResult<BookDto>. The repository is a stub returning a prepared page, so no database is involved.
+ * Logging is raised to WARN, so the INFO lines on this path are not written out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PagingResultBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private BooksServiceImpl booksService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+
+        Page<Book> page = new PageImpl<>(BenchmarkData.books(pageSize), PageRequest.of(0, pageSize), 50L * pageSize);
+        BooksRepository booksRepository = (BooksRepository) Proxy.newProxyInstance(
+                BooksRepository.class.getClassLoader(),
+                new Class<?>[]{BooksRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findAll") && args != null && args.length == 1 && args[0] instanceof Pageable) {
+                        return page;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        booksService = new BooksServiceImpl(booksRepository, null, new BooksMapperImpl(new UserMapperImpl()), null,
+                new JpqlBookSearchStrategy(booksRepository), null, null, null, null);
+    }
+
+    @Benchmark
+    public PagingResult<BookDto> getAllBooks() {
+        return booksService.getAllBooks(1, pageSize, "title");
+    }
+}
@@ -0,0 +1,47 @@
+package com.engfred.bookstore.benchmark;
+
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.response.PagingResult;
+import com.engfred.bookstore.mappers.BooksMapper;
+import com.engfred.bookstore.mappers.BooksMapperImpl;
+import com.engfred.bookstore.mappers.UserMapperImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Jackson writing a book listing response body, with the ObjectMapper settings Spring Boot applies by default
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PagingResultSerializationBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private PagingResult<BookDto> page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        BooksMapper booksMapper = new BooksMapperImpl(new UserMapperImpl());
+        List<BookDto> content = BenchmarkData.books(pageSize).stream().map(booksMapper::toDto).toList();
+        page = new PagingResult<>(content, 50, 50L * pageSize, pageSize, 1, false);
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -27,10 +27,10 @@ public class ApplicationConfiguration {
         this.userRepository = userRepository;
     }
 
-    //Loads a user by email from the database for authentication
+    //Loads a user by email from the database for authentication, on the primary so a login right after signup works
     @Bean
     public UserDetailsService userDetailsService() {
-        return username -> userRepository.findByEmail(username)
+        return username -> ReadYourWritesDataSource.onPrimary(() -> userRepository.findByEmail(username))
                 .orElseThrow(() -> new UsernameNotFoundException("User not found!"));
     }
 
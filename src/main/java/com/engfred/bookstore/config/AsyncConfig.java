@@ -0,0 +1,11 @@
+package com.engfred.bookstore.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+//@Async methods run on the auto-configured applicationTaskExecutor: virtual threads when spring.threads.virtual.enabled
+//is set on a Java 21+ runtime, otherwise the spring.task.execution.pool settings
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+}
@@ -0,0 +1,12 @@
+package com.engfred.bookstore.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+//Caches are declared in application.properties (spring.cache.*), hit/miss/eviction meters are published by actuator
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String BOOKS_CACHE = "books";
+    public static final String AUTHORS_CACHE = "authors";
+}
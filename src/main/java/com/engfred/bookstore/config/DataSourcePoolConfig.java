@@ -0,0 +1,60 @@
+package com.engfred.bookstore.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/*
+ * Sizes the Hikari pools from the cores the JVM may use: (cores * core-multiplier) + effective-spindles, the
+ * PostgreSQL rule of thumb. A bigger pool only adds connections waiting on the same CPUs and disks, requests beyond
+ * it queue in Hikari (hikaricp.connections.pending and .acquire show how long) rather than in the database.
+ * Each pool keeps an explicit size of its own: spring.datasource.hikari.maximum-pool-size for the primary,
+ * bookstore.datasource.replica.maximum-pool-size for the replica pool of ReplicaRoutingConfig. Setting one doesn't
+ * stop the other from being sized from the cores. Enabled in the prod profile.
+ */
+@Component
+@ConditionalOnProperty(name = "bookstore.datasource.size-from-cores", havingValue = "true")
+public class DataSourcePoolConfig implements BeanPostProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourcePoolConfig.class);
+    private static final String REPLICA_BEAN = "replicaDataSource";
+    private static final String PRIMARY_MAXIMUM_POOL_SIZE = "spring.datasource.hikari.maximum-pool-size";
+    private static final String REPLICA_MAXIMUM_POOL_SIZE = "bookstore.datasource.replica.maximum-pool-size";
+
+    private final Environment environment;
+    private final int coreMultiplier;
+    private final int effectiveSpindles;
+
+    public DataSourcePoolConfig(Environment environment,
+                                @Value("${bookstore.datasource.core-multiplier:2}") int coreMultiplier,
+                                @Value("${bookstore.datasource.effective-spindles:1}") int effectiveSpindles) {
+        this.environment = environment;
+        this.coreMultiplier = coreMultiplier;
+        this.effectiveSpindles = effectiveSpindles;
+    }
+
+    //After the pool's properties are bound, before it starts with the first connection
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource && !environment.containsProperty(maximumPoolSizeProperty(beanName))) {
+            int poolSize = poolSize(Runtime.getRuntime().availableProcessors());
+            dataSource.setMaximumPoolSize(poolSize);
+            logger.info("Sized connection pool {} to {} connections", beanName, poolSize);
+        }
+        return bean;
+    }
+
+    //Any other Hikari pool is the primary: Boot's dataSource, or primaryDataSource when a replica is configured
+    private static String maximumPoolSizeProperty(String beanName) {
+        return REPLICA_BEAN.equals(beanName) ? REPLICA_MAXIMUM_POOL_SIZE : PRIMARY_MAXIMUM_POOL_SIZE;
+    }
+
+    private int poolSize(int cores) {
+        return cores * coreMultiplier + effectiveSpindles;
+    }
+}
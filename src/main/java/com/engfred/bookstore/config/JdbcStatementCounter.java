@@ -0,0 +1,68 @@
+package com.engfred.bookstore.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nonnull;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/*
+ * Counts the SQL statements Hibernate prepares on the request thread and records them per endpoint in the
+ * bookstore.jdbc.statements summary, so an N+1 shows up as a jump in the per-request count.
+ * Registered as Hibernate's statement inspector by MetricsConfig, it only counts and never rewrites the SQL.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class JdbcStatementCounter extends OncePerRequestFilter implements StatementInspector {
+
+    //Statements of the current request, absent outside of requests (startup, @Async tasks, streamed bodies)
+    private static final ThreadLocal<int[]> STATEMENTS = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+
+    public JdbcStatementCounter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        int[] statements = STATEMENTS.get();
+        if (statements != null) {
+            statements[0]++;
+        }
+        return sql;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @Nonnull HttpServletRequest request,
+            @Nonnull HttpServletResponse response,
+            @Nonnull FilterChain filterChain
+    ) throws ServletException, IOException {
+        int[] statements = new int[1];
+        STATEMENTS.set(statements);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            STATEMENTS.remove();
+            //Set once the request was mapped, the same uri tag as http.server.requests
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("bookstore.jdbc.statements")
+                    .description("SQL statements prepared while serving a request")
+                    .tag("method", request.getMethod())
+                    .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                    .register(meterRegistry)
+                    .record(statements[0]);
+        }
+    }
+}
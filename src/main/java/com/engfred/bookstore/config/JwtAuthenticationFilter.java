@@ -20,7 +20,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -34,8 +33,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     //Helps catch and send back custom error responses when exceptions occur inside the filter
     private final HandlerExceptionResolver handlerExceptionResolver;
-    //Used to fetch user details from DB by username (which is email in this case).
-    private final UserDetailsService userDetailsService;
+    //Used to fetch the principal by username (which is email in this case), cached to spare a DB round trip.
+    private final PrincipalCache principalCache;
     private final JwtService jwtService;
 
 
@@ -62,7 +61,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
             if(email != null && authentication == null) {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(email);
+                UserDetails userDetails = this.principalCache.loadByEmail(email);
                 if(jwtService.validateToken(jwt, userDetails)) {
                     //Create a new authentication token that Spring Security understands
                     UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
@@ -86,7 +85,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 2. Filter checks for JWT in Authorization header
 3. If valid:
      - Extracts email from JWT
-     - Loads user from DB
+     - Loads the principal from the cache (or DB on a miss)
      - Validates the token
      - Authenticates user into the app (Spring context)
 4. If invalid or missing, continue or throw an error
@@ -0,0 +1,28 @@
+package com.engfred.bookstore.config;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Logback filter letting one event in every N through, the first one included.
+ * Used in logback-spring.xml on the slow query log, where a degraded database would otherwise
+ * turn every statement into a log line at the worst possible moment.
+ */
+public class LogSamplingFilter extends Filter<ILoggingEvent> {
+
+    private final AtomicLong events = new AtomicLong();
+    private int every = 1;
+
+    //Set by logback from the <every> element
+    public void setEvery(int every) {
+        this.every = Math.max(every, 1);
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        return events.getAndIncrement() % every == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
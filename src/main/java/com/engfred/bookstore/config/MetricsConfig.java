@@ -0,0 +1,40 @@
+package com.engfred.bookstore.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.HibernateQueryMetrics;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * Meters exposed on /actuator/prometheus, on top of the auto-configured ones
+ * (http.server.requests per endpoint, hikaricp.connections.*, cache.* for the Spring caches, hibernate.*):
+ * - bookstore.service: @Timed BooksServiceImpl/UserServiceImpl methods
+ * - hibernate.query: executions and time per HQL query
+ * - bookstore.jdbc.statements: statements per request (JdbcStatementCounter)
+ * - bookstore.cloudinary.*, bookstore.jwt.parse, bookstore.page-cache.*: recorded where they happen
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer statementCounterCustomizer(JdbcStatementCounter jdbcStatementCounter) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, jdbcStatementCounter);
+    }
+
+    //Bound like any MeterBinder bean. Needs hibernate.generate_statistics, a query gets its meters the first time it loads an entity.
+    @Bean
+    public HibernateQueryMetrics hibernateQueryMetrics(EntityManagerFactory entityManagerFactory) {
+        return new HibernateQueryMetrics(entityManagerFactory.unwrap(SessionFactory.class), "entityManagerFactory", Tags.empty());
+    }
+}
@@ -0,0 +1,162 @@
+package com.engfred.bookstore.config;
+
+import com.engfred.bookstore.utils.ResourceVersion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Serialized JSON of the most requested list pages, keyed by (endpoint, page, size, sort), with a gzip variant.
+ * An entry is only served while it carries the current ETag of its list, so a write made anywhere (another
+ * instance, the cover pipeline, an import) is never hidden. Book and author writes also drop every entry.
+ * W-TinyLFU keeps the frequently requested pages and lets one-off combinations go first.
+ */
+@Component
+public class PageResponseCache {
+
+    public record Key(String endpoint, int page, int size, String sort) {
+    }
+
+    public static final String GZIP = "gzip";
+
+    private final ObjectMapper objectMapper;
+    private final Cache<Key, Entry> pages;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bytesServed;
+    private final Counter bytesSaved;
+
+    public PageResponseCache(ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${bookstore.page-cache.maximum-size:64}") long maximumSize) {
+        this.objectMapper = objectMapper;
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.hits = Counter.builder("bookstore.page-cache.requests")
+                .description("List pages served from their serialized copy")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("bookstore.page-cache.requests")
+                .description("List pages queried, mapped and serialized")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.bytesServed = Counter.builder("bookstore.page-cache.bytes.served")
+                .description("Bytes of list page bodies returned to clients")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.bytesSaved = Counter.builder("bookstore.page-cache.bytes.saved")
+                .description("Bytes not sent thanks to the gzip variant")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("bookstore.page-cache.size", pages, Cache::estimatedSize)
+                .description("List pages held serialized")
+                .register(meterRegistry);
+    }
+
+    //The body of the page, serialized first unless a copy tagged with the current version is held. Gzipped when the
+    //client accepts it and it gets smaller; the caller sets the headers.
+    public Body body(Key key, ResourceVersion version, Supplier<?> page, String acceptEncoding) throws IOException {
+        Entry entry = pages.getIfPresent(key);
+        if (entry != null && entry.etag.equals(version.etag())) {
+            hits.increment();
+        } else {
+            misses.increment();
+            entry = new Entry(version.etag(), objectMapper.writeValueAsBytes(page.get()));
+            pages.put(key, entry);
+        }
+
+        Body body = new Body(entry.json, false);
+        if (acceptsGzip(acceptEncoding)) {
+            byte[] gzip = entry.gzip();
+            //Empty and very short pages don't get smaller
+            if (gzip.length < entry.json.length) {
+                bytesSaved.increment(entry.json.length - gzip.length);
+                body = new Body(gzip, true);
+            }
+        }
+        bytesServed.increment(body.bytes().length);
+        return body;
+    }
+
+    //JSON, or its gzip encoding: the response then needs Content-Encoding: gzip, so the container doesn't compress it again
+    public record Body(byte[] bytes, boolean gzipped) {
+    }
+
+    //Must be called whenever a book or an author is written
+    public void evictAll() {
+        pages.invalidateAll();
+    }
+
+    //gzip listed without q=0
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase(GZIP)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") && isZero(parameter.substring(2))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isZero(String qValue) {
+        try {
+            return Double.parseDouble(qValue) == 0;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static final class Entry {
+        private final String etag;
+        private final byte[] json;
+        //Compressed the first time a client accepts it, racing requests compress the same bytes
+        private volatile byte[] gzip;
+
+        Entry(String etag, byte[] json) {
+            this.etag = etag;
+            this.json = json;
+        }
+
+        byte[] gzip() {
+            byte[] compressed = gzip;
+            if (compressed == null) {
+                compressed = compress(json);
+                gzip = compressed;
+            }
+            return compressed;
+        }
+
+        private static byte[] compress(byte[] json) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(json);
+            } catch (IOException e) {
+                //In-memory streams don't fail
+                throw new UncheckedIOException(e);
+            }
+            return buffer.toByteArray();
+        }
+    }
+}
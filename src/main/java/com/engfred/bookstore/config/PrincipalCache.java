@@ -0,0 +1,53 @@
+package com.engfred.bookstore.config;
+
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.UserPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+//Size-bounded TTL cache of principals so that authenticated requests don't query the users table every time
+@Component
+public class PrincipalCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, UserPrincipal> principals;
+
+    public PrincipalCache(UserRepository userRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${security.principal-cache.maximum-size:10000}") long maximumSize,
+                          @Value("${security.principal-cache.ttl:5m}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        //Same tag keys as the Spring caches' meters, Prometheus drops a meter whose tag keys differ from its name's first one
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "principals", "cache.manager", "principalCache", "name", "principals");
+    }
+
+    //Loaded on the primary, a lagging replica would cache the user as they were before their last update
+    public UserPrincipal loadByEmail(String email) {
+        return principals.get(email, key -> ReadYourWritesDataSource.onPrimary(() -> userRepository.findPrincipalByEmail(key))
+                .orElseThrow(() -> new UsernameNotFoundException("User not found!")));
+    }
+
+    //Must be called whenever the user behind the email is updated or deleted
+    public void evict(String email) {
+        if (email != null) {
+            principals.invalidate(email);
+        }
+    }
+
+    public CacheStats stats() {
+        return principals.stats();
+    }
+}
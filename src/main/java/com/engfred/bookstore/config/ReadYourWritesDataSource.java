@@ -0,0 +1,81 @@
+package com.engfred.bookstore.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+ * Where read-only transactions get their connection, see ReplicaRoutingConfig: the replica, except for a user who
+ * committed a read-write transaction less than stickyFor ago. Their reads stay on the primary until the replica has
+ * caught up with their write, so they never see their own change undone. Anonymous and background work isn't tracked.
+ * Per instance: behind a load balancer without session affinity, stickyFor should exceed the replica lag on its own.
+ * Reads filling a cache shared by all users, and the reads a write decides on, go through onPrimary: stickiness only
+ * covers the user's own committed writes, not anonymous ones, the cover pipeline's or another user's.
+ */
+public class ReadYourWritesDataSource extends AbstractRoutingDataSource implements TransactionExecutionListener {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    //Set while the current thread reads through onPrimary
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    //Emails of the users who wrote recently, an entry expires stickyFor after their last write
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesDataSource(DataSource primary, DataSource replica, Duration stickyFor, long maximumWriters) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(stickyFor)
+                .maximumSize(maximumWriters)
+                .build();
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(replica);
+    }
+
+    //Runs the read on the primary even in a read-only transaction. Does nothing more than run it without a replica.
+    public static <T> T onPrimary(Supplier<T> read) {
+        if (PRIMARY_READS.get() != null) {
+            return read.get();
+        }
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            PRIMARY_READS.remove();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (PRIMARY_READS.get() != null) {
+            return PRIMARY;
+        }
+        String email = currentUser();
+        return email != null && recentWriters.getIfPresent(email) != null ? PRIMARY : REPLICA;
+    }
+
+    //Called by the transaction manager for every transaction it commits
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        String email = currentUser();
+        if (commitFailure == null && !transaction.isReadOnly() && email != null) {
+            recentWriters.put(email, Boolean.TRUE);
+        }
+    }
+
+    //Signed-in users only, every anonymous request shares the same name
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null || authentication instanceof AnonymousAuthenticationToken ? null : authentication.getName();
+    }
+}
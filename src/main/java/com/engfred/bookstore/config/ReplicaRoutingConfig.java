@@ -0,0 +1,64 @@
+package com.engfred.bookstore.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/*
+ * Read replica routing, on when bookstore.datasource.replica.jdbc-url is set. Read-only transactions
+ * (@Transactional(readOnly = true) service methods, and the repositories' own reads outside a service transaction)
+ * run on the replica pool, everything else on the primary pool of spring.datasource.*, migrations included.
+ * The connection is only taken from a pool at the first statement, once the transaction has marked it read-only:
+ * LazyConnectionDataSourceProxy picks the pool then. Users who just wrote read from the primary, see ReadYourWritesDataSource.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "bookstore.datasource.replica", name = "jdbc-url")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    //jdbc-url, username, password and any other Hikari setting, under bookstore.datasource.replica
+    @Bean
+    @ConfigurationProperties("bookstore.datasource.replica")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        return dataSource;
+    }
+
+    @Bean
+    public ReadYourWritesDataSource readYourWritesDataSource(
+            @Qualifier("primaryDataSource") DataSource primary,
+            @Qualifier("replicaDataSource") DataSource replica,
+            @Value("${bookstore.datasource.replica.sticky-for:5s}") Duration stickyFor,
+            @Value("${bookstore.datasource.replica.sticky-maximum-users:100000}") long maximumUsers) {
+        return new ReadYourWritesDataSource(primary, replica, stickyFor, maximumUsers);
+    }
+
+    //The DataSource of JPA, JdbcTemplate and the rest of the application
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary, ReadYourWritesDataSource readOnly) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(readOnly);
+        return dataSource;
+    }
+}
@@ -0,0 +1,10 @@
+package com.engfred.bookstore.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+//@Scheduled methods run on the auto-configured taskScheduler, see the spring.task.scheduling settings
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,9 +1,12 @@
 package com.engfred.bookstore.config;
 
 //6.
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -27,6 +30,7 @@ public class SecurityConfiguration {
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     private final CustomAuthenticationEntryPoint authenticationEntryPoint;
     private final CustomAccessDeniedHandler accessDeniedHandler;
+    private final Environment environment;
 
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
@@ -35,10 +39,18 @@ public class SecurityConfiguration {
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        //The dispatch that completes a streamed response: its request was authorized when it came in,
+                        //the JWT filter doesn't run again and the response is already committed
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         //Public auth endpoints
                         .requestMatchers(HttpMethod.POST, "/auth/signup/**").permitAll()
                         .requestMatchers(HttpMethod.POST, "/auth/login/**").permitAll()
 
+                        //The export streams the whole catalogue on a pooled connection for as long as the client reads,
+                        //so it isn't public like the other book reads
+                        .requestMatchers(HttpMethod.GET, "/books/export").authenticated()
+
                         //Public book endpoints
                         .requestMatchers(HttpMethod.GET, "/books").permitAll()
                         .requestMatchers(HttpMethod.GET, "/books/**").permitAll()
@@ -48,6 +60,10 @@ public class SecurityConfiguration {
                         .requestMatchers(HttpMethod.GET, "/authors").permitAll()
                         .requestMatchers(HttpMethod.GET,"/authors/search").permitAll()
 
+                        //Probes and Prometheus scrapes, only on the management port (management.server.port), which isn't
+                        //routed publicly. When actuator shares the API port, they need a token like everything else.
+                        .requestMatchers(this::isManagementProbe).permitAll()
+
                         //Everything else requires auth
                         .anyRequest().authenticated()
                 )
@@ -60,6 +76,15 @@ public class SecurityConfiguration {
                 .build();
     }
 
+    //local.management.port is set once the management server listens, it is absent when actuator shares the API port
+    private boolean isManagementProbe(HttpServletRequest request) {
+        Integer managementPort = environment.getProperty("local.management.port", Integer.class);
+        if (managementPort == null || managementPort != request.getLocalPort() || !HttpMethod.GET.matches(request.getMethod())) {
+            return false;
+        }
+        String path = request.getRequestURI();
+        return path.equals("/actuator/prometheus") || path.equals("/actuator/health") || path.startsWith("/actuator/health/");
+    }
 
     @Bean
     CorsConfigurationSource corsConfigurationSource() {
@@ -0,0 +1,14 @@
+package com.engfred.bookstore.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnJava;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+//Turns spring.threads.virtual.enabled on by default, only on a Java 21+ runtime. On older runtimes the property stays
+//unset (false), the default build targets Java 17 and only the java21 profile compiles for 21
+@Configuration
+@ConditionalOnJava(JavaVersion.TWENTY_ONE)
+@PropertySource("classpath:virtual-threads.properties")
+public class VirtualThreadsConfig {
+}
@@ -3,18 +3,26 @@ package com.engfred.bookstore.controller;
 import com.engfred.bookstore.dto.models.BookDto;
 import com.engfred.bookstore.dto.request.CreateBookRequest;
 import com.engfred.bookstore.dto.request.UpdateBookRequest;
-import com.engfred.bookstore.dto.response.PagingResult;
+import com.engfred.bookstore.dto.response.BookImportReport;
+import com.engfred.bookstore.service.BookFileFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
 import java.util.UUID;
 
 public interface BooksController {
     ResponseEntity<BookDto> createBook(CreateBookRequest request) throws IOException;
+    ResponseEntity<BookImportReport> importBooks(MediaType contentType, InputStream body) throws IOException;
+    ResponseEntity<StreamingResponseBody> exportBooks(BookFileFormat format, Date updatedSince);
     ResponseEntity<BookDto> updateBook(UUID bookId,UpdateBookRequest request) throws AccessDeniedException, IOException;
-    ResponseEntity<PagingResult<BookDto>> getAllBooks(int pageNumber, int pageSize, String sortValue);
-    ResponseEntity<PagingResult<BookDto>> getBooksByAuthor(UUID authorId, int pageNumber, int pageSize, String sortValue);
-    ResponseEntity<BookDto> getBookById(UUID id);
+    ResponseEntity<?> getAllBooks(int pageNumber, int pageSize, String sortValue, String after, boolean cursor, WebRequest webRequest) throws IOException;
+    ResponseEntity<?> getBooksByAuthor(UUID authorId, int pageNumber, int pageSize, String sortValue, String after, boolean cursor, WebRequest webRequest) throws IOException;
+    ResponseEntity<BookDto> getBookById(UUID id, WebRequest webRequest);
     ResponseEntity<Void> deleteBook(UUID bookId) throws AccessDeniedException;
 }
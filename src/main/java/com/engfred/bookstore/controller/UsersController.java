@@ -7,6 +7,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
 import java.nio.file.AccessDeniedException;
@@ -17,7 +18,9 @@ public interface UsersController {
             Integer page,
             Integer size,
             String sort,
-            Sort.Direction direction
+            Sort.Direction direction,
+            String after,
+            boolean cursor
     );
 
     @GetMapping("/search")
@@ -25,10 +28,12 @@ public interface UsersController {
             String keyword,
             int page,
             int size,
-            String sort
+            String sort,
+            String after,
+            boolean cursor
     );
 
-    ResponseEntity<UserDto> getUserById(UUID userId);
+    ResponseEntity<UserDto> getUserById(UUID userId, WebRequest webRequest);
     ResponseEntity<Void> deleteUser() throws AccessDeniedException;
     ResponseEntity<UserDto> updateUser(UpdateUserRequest request) throws IOException;
 }
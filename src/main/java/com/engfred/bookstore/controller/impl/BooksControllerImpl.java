@@ -1,20 +1,33 @@
 package com.engfred.bookstore.controller.impl;
 
+import com.engfred.bookstore.config.PageResponseCache;
 import com.engfred.bookstore.controller.BooksController;
 import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.models.UserDto;
 import com.engfred.bookstore.dto.request.CreateBookRequest;
 import com.engfred.bookstore.dto.request.UpdateBookRequest;
+import com.engfred.bookstore.dto.response.BookImportReport;
 import com.engfred.bookstore.dto.response.PagingResult;
+import com.engfred.bookstore.service.BookExportService;
+import com.engfred.bookstore.service.BookFileFormat;
+import com.engfred.bookstore.service.BookImportService;
 import com.engfred.bookstore.service.BooksService;
+import com.engfred.bookstore.utils.ResourceVersion;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
 import java.util.UUID;
 
 @RestController
@@ -23,38 +36,84 @@ import java.util.UUID;
 public class BooksControllerImpl implements BooksController {
 
     private final BooksService booksService;
+    private final BookImportService bookImportService;
+    private final BookExportService bookExportService;
+    private final PageResponseCache pageResponseCache;
 
     @Override
     @GetMapping
-    public ResponseEntity<PagingResult<BookDto>> getAllBooks(
+    //A PagingResult in cursor mode, else the page serialized by the page cache
+    public ResponseEntity<?> getAllBooks(
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(defaultValue = "title") String sort
-    ) {
-        PagingResult<BookDto> books = booksService.getAllBooks(page, size, sort);
-        return ResponseEntity.ok(books);
+            @RequestParam(defaultValue = "title") String sort,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean cursor,
+            WebRequest webRequest
+    ) throws IOException {
+        //Read before the page, so the tag is never newer than the content
+        ResourceVersion version = booksService.getAllBooksVersion();
+        if (version.isNotModified(webRequest)) {
+            return null;
+        }
+        //Cursor mode is opted into with cursor=true for the first slice, then by passing back nextCursor as "after"
+        if (cursor || after != null) {
+            return version.ok(booksService.getAllBooksAfter(after, size, sort));
+        }
+        PageResponseCache.Body body = pageResponseCache.body(new PageResponseCache.Key("/books", page, size, sort), version,
+                () -> booksService.getAllBooks(page, size, sort), webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        return pageResponse(version, body);
     }
 
+    //Without a sort, ranked by relevance when the search strategy ranks (fulltext), else by title
     @GetMapping("/search")
     public ResponseEntity<PagingResult<BookDto>> searchBooks(
             @RequestParam String keyword,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(defaultValue = "title") String sort
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean cursor
     ) {
+        if (cursor || after != null) {
+            return ResponseEntity.ok(booksService.searchBooksAfter(keyword, after, size, sort));
+        }
         return ResponseEntity.ok(booksService.searchBooks(keyword, page, size, sort));
     }
 
     @Override
     @GetMapping("/author/{authorId}")
-    public ResponseEntity<PagingResult<BookDto>> getBooksByAuthor(
+    public ResponseEntity<?> getBooksByAuthor(
             @PathVariable UUID authorId,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(defaultValue = "title") String sort
-    ) {
-        PagingResult<BookDto> books = booksService.getBooksByAuthor(authorId, page, size, sort);
-        return ResponseEntity.ok(books);
+            @RequestParam(defaultValue = "title") String sort,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean cursor,
+            WebRequest webRequest
+    ) throws IOException {
+        ResourceVersion version = booksService.getBooksByAuthorVersion(authorId);
+        if (version.isNotModified(webRequest)) {
+            return null;
+        }
+        if (cursor || after != null) {
+            return version.ok(booksService.getBooksByAuthorAfter(authorId, after, size, sort));
+        }
+        PageResponseCache.Body body = pageResponseCache.body(new PageResponseCache.Key("/books/author/" + authorId, page, size, sort),
+                version, () -> booksService.getBooksByAuthor(authorId, page, size, sort), webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        return pageResponse(version, body);
+    }
+
+    //Already serialized, the byte array converter writes it as it is
+    private static ResponseEntity<byte[]> pageResponse(ResourceVersion version, PageResponseCache.Body body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(version.etag())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (body.gzipped()) {
+            response.header(HttpHeaders.CONTENT_ENCODING, PageResponseCache.GZIP);
+        }
+        return response.body(body.bytes());
     }
 
     @Override
@@ -64,6 +123,30 @@ public class BooksControllerImpl implements BooksController {
         return new ResponseEntity<>(bookDto, HttpStatus.CREATED);
     }
 
+    //Whole catalogue in id order, written while it is read. Incremental consumers pass the time of their last export as updatedSince.
+    @Override
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportBooks(
+            @RequestParam(defaultValue = "NDJSON") BookFileFormat format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date updatedSince
+    ) {
+        StreamingResponseBody body = output -> bookExportService.exportBooks(updatedSince, format, output);
+        return ResponseEntity.ok()
+                .contentType(format.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books." + format.name().toLowerCase() + "\"")
+                .body(body);
+    }
+
+    //The body is read as it arrives, send it with Content-Type application/x-ndjson or text/csv
+    @Override
+    @PostMapping(value = "/import", consumes = {BookFileFormat.NDJSON_VALUE, BookFileFormat.CSV_VALUE})
+    public ResponseEntity<BookImportReport> importBooks(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body
+    ) throws IOException {
+        return ResponseEntity.ok(bookImportService.importBooks(body, BookFileFormat.of(contentType)));
+    }
+
     @Override
     @PutMapping(value = "/{bookId}/update", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<BookDto> updateBook(
@@ -76,9 +159,16 @@ public class BooksControllerImpl implements BooksController {
 
     @Override
     @GetMapping("/{id}")
-    public ResponseEntity<BookDto> getBookById(@PathVariable UUID id) {
+    public ResponseEntity<BookDto> getBookById(@PathVariable UUID id, WebRequest webRequest) {
+        //304 (response already set) when the client's copy is current, without loading or mapping the book
+        if (booksService.getBookVersion(id).isNotModified(webRequest)) {
+            return null;
+        }
         BookDto bookDto = booksService.getBookById(id);
-        return ResponseEntity.ok(bookDto);
+        //Tagged from the body itself, so the tag never runs ahead of a cached copy
+        UserDto author = bookDto.getAuthor();
+        return ResourceVersion.of(bookDto.getVersion() + author.getVersion(), bookDto.getUpdatedAt(), author.getUpdatedAt())
+                .ok(bookDto);
     }
 
     @Override
@@ -5,12 +5,14 @@ import com.engfred.bookstore.dto.models.UserDto;
 import com.engfred.bookstore.dto.request.UpdateUserRequest;
 import com.engfred.bookstore.dto.response.PagingResult;
 import com.engfred.bookstore.service.UserService;
+import com.engfred.bookstore.utils.ResourceVersion;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
 import java.nio.file.AccessDeniedException;
@@ -30,9 +32,14 @@ public class UsersControllerImpl implements UsersController {
             @RequestParam(defaultValue = "1") Integer page,
             @RequestParam(defaultValue = "10") Integer size,
             @RequestParam(defaultValue = "id") String sort,
-            @RequestParam(defaultValue = "DESC") Sort.Direction direction
+            @RequestParam(defaultValue = "DESC") Sort.Direction direction,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean cursor
     ) {
-        final PagingResult<UserDto> authors = userService.getAllUsers(page, size, sort);
+        //Cursor mode is opted into with cursor=true for the first slice, then by passing back nextCursor as "after"
+        final PagingResult<UserDto> authors = cursor || after != null
+                ? userService.getAllUsersAfter(after, size, sort, direction)
+                : userService.getAllUsers(page, size, sort, direction);
         return ResponseEntity.ok(authors);
     }
 
@@ -42,17 +49,27 @@ public class UsersControllerImpl implements UsersController {
             @RequestParam String keyword,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(defaultValue = "firstname") String sort
+            @RequestParam(defaultValue = "firstname") String sort,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean cursor
     ) {
+        if (cursor || after != null) {
+            return ResponseEntity.ok(userService.searchAuthorsAfter(keyword, after, size, sort));
+        }
         return ResponseEntity.ok(userService.searchAuthors(keyword, page, size, sort));
     }
 
 
     @Override
     @GetMapping("/{id}")
-    public ResponseEntity<UserDto> getUserById(@PathVariable("id") UUID userId) {
+    public ResponseEntity<UserDto> getUserById(@PathVariable("id") UUID userId, WebRequest webRequest) {
+        //304 (response already set) when the client's copy is current, without loading or mapping the user
+        if (userService.getUserVersion(userId).isNotModified(webRequest)) {
+            return null;
+        }
         final UserDto author = userService.getUserById(userId);
-        return ResponseEntity.ok(author);
+        //Tagged from the body itself, so the tag never runs ahead of a cached copy
+        return ResourceVersion.of(author.getVersion(), author.getUpdatedAt()).ok(author);
     }
 
     @Override
@@ -5,12 +5,17 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.util.*;
 
 @Entity
 @Table(name = "books")
+//Updates set only the columns that changed (with updated_at and version), not the whole row
+@DynamicUpdate
 @Data
 @Builder
 @NoArgsConstructor
@@ -45,10 +50,28 @@ public class Book {
     @Column(name = "cover_image_public_id")
     private String coverImagePublicId;
 
+    //Clients poll it after sending a cover, the url and public id are filled in once it is READY
+    @Enumerated(EnumType.STRING)
+    @ColumnDefault("'NONE'")
+    @Column(nullable = false, name = "cover_image_status", length = 16)
+    @Builder.Default
+    private CoverImageStatus coverImageStatus = CoverImageStatus.NONE;
+
     @CreationTimestamp
     @Column(updatable = false, name = "created_at")
     private Date createdAt;
 
+    //Set on every write, bulk updates set it explicitly. Backfilled from created_at for older rows (V4 migration).
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Date updatedAt;
+
+    //Optimistic lock, also the ETag of the book (with its author's)
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     // Many books belong to one author
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id", nullable = false)
@@ -0,0 +1,24 @@
+package com.engfred.bookstore.data.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One write that changed what a book listing shows, appended by the triggers of db/migration/V8__catalogue_version.sql.
+ * Appending takes no lock another writer waits on, unlike bumping a shared counter.
+ */
+@Entity
+@Table(name = "catalogue_changes")
+@Data
+@NoArgsConstructor
+public class CatalogueChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+}
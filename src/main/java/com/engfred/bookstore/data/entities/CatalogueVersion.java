@@ -0,0 +1,27 @@
+package com.engfred.bookstore.data.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * The single row holding the catalogue writes folded out of catalogue_changes, the ETag of the book listings is this
+ * plus the changes still pending. Only compaction writes it, see db/migration/V8__catalogue_version.sql.
+ */
+@Entity
+@Table(name = "catalogue_version")
+@Data
+@NoArgsConstructor
+public class CatalogueVersion {
+
+    public static final int ID = 1;
+
+    @Id
+    private int id;
+
+    @Column(nullable = false)
+    private long version;
+}
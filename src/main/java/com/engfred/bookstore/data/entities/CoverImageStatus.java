@@ -0,0 +1,9 @@
+package com.engfred.bookstore.data.entities;
+
+//Where the book's latest cover upload is: the image is uploaded in the background after the book is saved
+public enum CoverImageStatus {
+    NONE,
+    PENDING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,51 @@
+package com.engfred.bookstore.data.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.util.Date;
+import java.util.UUID;
+
+/*
+ * One uploaded Cloudinary image, keyed by the SHA-256 of its content.
+ * Books and users holding the same image share it; the remote copy is destroyed once nothing references it.
+ */
+@Entity
+@Table(name = "image_assets", uniqueConstraints = @UniqueConstraint(
+        name = "uk_image_assets_content_hash_image_type", columnNames = {"content_hash", "image_type"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageAsset {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    //Hex encoded SHA-256 of the uploaded bytes
+    @Column(nullable = false, name = "content_hash", length = 64)
+    private String contentHash;
+
+    //Covers and profile images live in different folders, so the same bytes are stored once per type
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, name = "image_type", length = 16)
+    private ImageType imageType;
+
+    @Column(nullable = false, unique = true, name = "public_id")
+    private String publicId;
+
+    @Column(nullable = false, name = "image_url")
+    private String imageUrl;
+
+    @Column(nullable = false, name = "reference_count")
+    private int referenceCount;
+
+    @CreationTimestamp
+    @Column(updatable = false, name = "created_at")
+    private Date createdAt;
+}
@@ -7,7 +7,10 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -15,6 +18,8 @@ import java.util.*;
 
 @Entity
 @Table(name ="users")
+//A profile edit writes the fields it changed, never the password or the image columns it left alone
+@DynamicUpdate
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
@@ -58,6 +63,17 @@ public class User implements UserDetails {
     @Column(updatable = false, name = "created_at")
     private Date createdAt;
 
+    //Rows written before the column existed were backfilled from created_at (V4 migration)
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Date updatedAt;
+
+    //Optimistic lock, also the ETag of the author
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     @OneToMany(mappedBy = "author", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonIgnore // Prevent circular references in JSON serialization
     private List<Book> books = new ArrayList<>();
@@ -0,0 +1,33 @@
+package com.engfred.bookstore.data.repository;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import jakarta.persistence.criteria.Join;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.UUID;
+
+//Criteria counterparts of the BooksRepository queries, combined with a keyset cursor for slice paging
+public final class BookSpecifications {
+
+    private BookSpecifications() {
+    }
+
+    public static Specification<Book> hasAuthor(UUID authorId) {
+        return (root, query, cb) -> cb.equal(root.get("author").get("id"), authorId);
+    }
+
+    //Same predicate as BooksRepository.searchBooks
+    public static Specification<Book> matchesKeyword(String keyword) {
+        return (root, query, cb) -> {
+            String pattern = "%" + keyword.toLowerCase() + "%";
+            Join<Book, User> author = root.join("author");
+            return cb.or(
+                    cb.like(cb.lower(root.get("title")), pattern),
+                    cb.like(cb.lower(root.get("genre")), pattern),
+                    cb.like(cb.lower(author.get("firstname")), pattern),
+                    cb.like(cb.lower(author.get("lastname")), pattern)
+            );
+        };
+    }
+}
@@ -1,19 +1,73 @@
 package com.engfred.bookstore.data.repository;
 
 import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.CoverImageStatus;
+import com.engfred.bookstore.utils.SortWhitelist;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
-public interface BooksRepository extends JpaRepository<Book, UUID> {
+public interface BooksRepository extends JpaRepository<Book, UUID>, SliceSpecificationExecutor<Book> {
+    //Rows per round trip when streaming, the PostgreSQL driver only honours it inside a transaction
+    int EXPORT_FETCH_SIZE = 1000;
+
+    //Search sort of the best matches first, for the strategies that rank them (BookSearchStrategy.ranksByRelevance)
+    String RELEVANCE = "relevance";
+
+    //Sorts of GET /books, each read from a (field, id) index of the V7 and V9 migrations
+    SortWhitelist LISTING_SORTS = SortWhitelist.builder()
+            .ordering("title").ordering("genre").ordering("createdAt").ordering("publishedAt")
+            .ordering("genre", "title")
+            .build();
+
+    //Sorts of an author's books, served by the (author_id, field, id) indexes. Sorting by id sorts the author's books only.
+    SortWhitelist AUTHOR_SORTS = SortWhitelist.builder()
+            .ordering("title").ordering("createdAt")
+            .build();
+
+    //Sorts of search results, the matches are sorted rather than the table. Every field is a column of searchIdsByFullText.
+    SortWhitelist SEARCH_SORTS = SortWhitelist.builder()
+            .ordering("title").ordering("genre").ordering("createdAt").ordering("publishedAt")
+            .build();
+
+    //Columns of the searchIdsByFullText subquery a client sort may name, besides id
+    Set<String> FULL_TEXT_SORT_COLUMNS = Set.of("title", "genre", "created_at", "published_at");
+
+    //Listing queries fetch the author in the same select, the mapper reads it for every row.
+    //Spring Data still issues the separate count query for the page metadata.
+    @Override
+    @EntityGraph(attributePaths = "author")
+    Page<Book> findAll(Pageable pageable);
+
+    //Every caller reads the author (mapping, ownership checks), open-in-view is off so it can't be loaded later
+    @Override
+    @EntityGraph(attributePaths = "author")
+    Optional<Book> findById(UUID id);
+
+    @EntityGraph(attributePaths = "author")
     Page<Book> findAllByAuthorId(UUID authorId, Pageable pageable);
 
+    @EntityGraph(attributePaths = "author")
     @Query("""
         SELECT b FROM Book b
         WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :query, '%'))
@@ -22,4 +76,132 @@ public interface BooksRepository extends JpaRepository<Book, UUID> {
            OR LOWER(b.author.lastname) LIKE LOWER(CONCAT('%', :query, '%'))
     """)
     Page<Book> searchBooks(@Param("query") String query, Pageable pageable);
+
+    //Full-text match, see FullTextBookSearchStrategy. Only ids are read, the page is hydrated afterwards.
+    //Each branch is served by its own indexes: the search vector and title/genre trigrams, then the author name
+    //trigrams with the author's books. The pageable's sort comes from fullTextOrder, over the result's columns.
+    @Query(value = """
+        SELECT b.id FROM (
+            SELECT m.id, m.title, m.genre, m.created_at, m.published_at,
+                   ts_rank(m.search_vector, to_tsquery('simple', :tsQuery)) AS rank,
+                   similarity(lower(m.title), :keyword) AS title_similarity
+            FROM books m
+            WHERE m.search_vector @@ to_tsquery('simple', :tsQuery)
+               OR lower(m.title) LIKE :pattern
+               OR lower(m.genre) LIKE :pattern
+            UNION
+            SELECT a.id, a.title, a.genre, a.created_at, a.published_at,
+                   ts_rank(a.search_vector, to_tsquery('simple', :tsQuery)) AS rank,
+                   similarity(lower(a.title), :keyword) AS title_similarity
+            FROM books a JOIN users u ON u.id = a.author_id
+            WHERE lower(u.firstname) LIKE :pattern
+               OR lower(u.lastname) LIKE :pattern
+        ) b
+    """, countQuery = """
+        SELECT count(*) FROM (
+            SELECT m.id FROM books m
+            WHERE m.search_vector @@ to_tsquery('simple', :tsQuery)
+               OR lower(m.title) LIKE :pattern
+               OR lower(m.genre) LIKE :pattern
+            UNION
+            SELECT a.id FROM books a JOIN users u ON u.id = a.author_id
+            WHERE lower(u.firstname) LIKE :pattern
+               OR lower(u.lastname) LIKE :pattern
+        ) b
+    """, nativeQuery = true)
+    Page<UUID> searchIdsByFullText(@Param("tsQuery") String tsQuery,
+                                   @Param("pattern") String pattern,
+                                   @Param("keyword") String keyword,
+                                   Pageable pageable);
+
+    //ORDER BY of searchIdsByFullText, over the result's columns. RELEVANCE (or no sort) puts the best matches first:
+    //ts_rank, then title similarity, then id. A column sort comes first instead, relevance then orders the rows it
+    //leaves tied before the id tiebreaker. Any other field is rejected here, it would reach the native ORDER BY.
+    static Sort fullTextOrder(Sort sort) {
+        Sort relevance = Sort.by(Sort.Direction.DESC, "rank", "title_similarity");
+        if (sort.isUnsorted() || sort.getOrderFor(RELEVANCE) != null) {
+            return relevance.and(Sort.by("id"));
+        }
+        List<Sort.Order> fields = sort.stream()
+                .filter(order -> !order.getProperty().equals("id"))
+                .map(order -> order.withProperty(order.getProperty().replaceAll("([A-Z])", "_$1").toLowerCase(Locale.ROOT)))
+                .toList();
+        fields.stream()
+                .filter(order -> !FULL_TEXT_SORT_COLUMNS.contains(order.getProperty()))
+                .findFirst()
+                .ifPresent(order -> {
+                    throw new IllegalArgumentException("Search results can't be sorted by '" + order.getProperty() + "'");
+                });
+        Sort.Order id = sort.getOrderFor("id") != null ? sort.getOrderFor("id") : Sort.Order.asc("id");
+        if (fields.isEmpty()) {
+            return Sort.by(id);
+        }
+        return Sort.by(fields).and(relevance).and(Sort.by(id));
+    }
+
+    @EntityGraph(attributePaths = "author")
+    List<Book> findAllByIdIn(Collection<UUID> ids);
+
+    //Forward-only read of the whole catalogue for the export, see BookExportServiceImpl. Must be consumed inside a transaction.
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT b FROM Book b JOIN FETCH b.author ORDER BY b.id")
+    Stream<Book> streamAll();
+
+    //Books written at or after since, rows older than the updated_at column count from their creation
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT b FROM Book b JOIN FETCH b.author WHERE COALESCE(b.updatedAt, b.createdAt) >= :since ORDER BY b.id")
+    Stream<Book> streamUpdatedSince(@Param("since") Date since);
+
+    //Conditional GET checks: versions only, no entity or DTO is built
+    @Query("""
+        SELECT b.version AS version, b.updatedAt AS updatedAt, a.version AS authorVersion, a.updatedAt AS authorUpdatedAt
+        FROM Book b JOIN b.author a WHERE b.id = :id
+    """)
+    Optional<BookVersion> findVersionById(@Param("id") UUID id);
+
+    @Query("""
+        SELECT COUNT(b) AS count, COALESCE(SUM(b.version), 0) AS versionSum, MAX(b.updatedAt) AS lastModified
+        FROM Book b WHERE b.author.id = :authorId
+    """)
+    VersionSummary summarizeVersionsByAuthorId(@Param("authorId") UUID authorId);
+
+    @Query("SELECT b.id FROM Book b WHERE b.author.id = :authorId")
+    List<UUID> findIdsByAuthorId(@Param("authorId") UUID authorId);
+
+    @Query("SELECT b.coverImagePublicId FROM Book b WHERE b.author.id = :authorId AND b.coverImagePublicId IS NOT NULL")
+    List<String> findCoverImagePublicIdsByAuthorId(@Param("authorId") UUID authorId);
+
+    //Locks the book's row until the end of the caller's transaction, so the cover can't change before it is replaced
+    @Query(value = "SELECT cover_image_public_id FROM books WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<String> lockCoverImagePublicIdById(@Param("id") UUID id);
+
+    //Cover upload results are written column by column, so a background upload never overwrites
+    //fields the author changed meanwhile. Both return 0 when the book has been deleted.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("""
+        UPDATE Book b SET b.coverImageUrl = :url, b.coverImagePublicId = :publicId, b.coverImageStatus = :status,
+                          b.updatedAt = CURRENT_TIMESTAMP, b.version = b.version + 1
+        WHERE b.id = :id
+    """)
+    int updateCoverImage(@Param("id") UUID id, @Param("url") String url, @Param("publicId") String publicId,
+                         @Param("status") CoverImageStatus status);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Book b SET b.coverImageStatus = :status, b.updatedAt = CURRENT_TIMESTAMP, b.version = b.version + 1 WHERE b.id = :id")
+    int updateCoverImageStatus(@Param("id") UUID id, @Param("status") CoverImageStatus status);
+
+    interface BookVersion {
+        long getVersion();
+        Date getUpdatedAt();
+        long getAuthorVersion();
+        Date getAuthorUpdatedAt();
+    }
 }
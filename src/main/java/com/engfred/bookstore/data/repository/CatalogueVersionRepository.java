@@ -0,0 +1,28 @@
+package com.engfred.bookstore.data.repository;
+
+import com.engfred.bookstore.data.entities.CatalogueVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CatalogueVersionRepository extends JpaRepository<CatalogueVersion, Integer> {
+
+    //One statement, one snapshot: the folded count and the pending changes can't be read half-compacted.
+    //The conditional GET of a book listing costs this statement, it counts the changes since the last compaction.
+    @Query("""
+        SELECT c.version + (SELECT COUNT(change) FROM CatalogueChange change)
+        FROM CatalogueVersion c WHERE c.id = """ + CatalogueVersion.ID)
+    long findCurrent();
+
+    //Only the changes committed when the delete starts, later ones stay for the next compaction
+    @Modifying
+    @Query("DELETE FROM CatalogueChange")
+    int deleteChanges();
+
+    @Modifying
+    @Query("UPDATE CatalogueVersion c SET c.version = c.version + :changes WHERE c.id = " + CatalogueVersion.ID)
+    void addChanges(@Param("changes") long changes);
+}
@@ -0,0 +1,39 @@
+package com.engfred.bookstore.data.repository;
+
+import com.engfred.bookstore.data.entities.ImageAsset;
+import com.engfred.bookstore.data.entities.ImageType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ImageAssetRepository extends JpaRepository<ImageAsset, UUID> {
+
+    Optional<ImageAsset> findByContentHashAndImageType(String contentHash, ImageType imageType);
+
+    boolean existsByPublicId(String publicId);
+
+    //Reference counts only move through these single statements, so concurrent uploads and deletes never lose an update.
+    //acquire returns 0 when the asset was removed after it was read.
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImageAsset a SET a.referenceCount = a.referenceCount + 1 WHERE a.id = :id")
+    int acquire(@Param("id") UUID id);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImageAsset a SET a.referenceCount = a.referenceCount - 1 WHERE a.publicId = :publicId AND a.referenceCount > 0")
+    int release(@Param("publicId") String publicId);
+
+    //Returns 1 only to the caller that removed the last reference, unless the image was acquired again meanwhile
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ImageAsset a WHERE a.publicId = :publicId AND a.referenceCount = 0")
+    int deleteUnreferenced(@Param("publicId") String publicId);
+}
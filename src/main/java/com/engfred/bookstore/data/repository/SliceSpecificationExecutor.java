@@ -0,0 +1,32 @@
+package com.engfred.bookstore.data.repository;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.repository.NoRepositoryBean;
+
+import java.util.List;
+
+//Adds count-free slices on top of specifications, used by the keyset (cursor) paging mode
+@NoRepositoryBean
+public interface SliceSpecificationExecutor<T> extends JpaSpecificationExecutor<T> {
+
+    //Reads one row past the requested size to know whether another slice follows, no COUNT(*) is issued
+    default Slice<T> findSlice(Specification<T> spec, Sort sort, int size, String... fetchPaths) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must not be less than one");
+        }
+
+        List<T> rows = findBy(spec, query -> {
+            var fluent = query.sortBy(sort).limit(size + 1);
+            return (fetchPaths.length > 0 ? fluent.project(fetchPaths) : fluent).all();
+        });
+
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+        return new SliceImpl<>(content, PageRequest.of(0, size, sort), hasNext);
+    }
+}
@@ -1,6 +1,8 @@
 package com.engfred.bookstore.data.repository;
 
 import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.dto.models.UserPrincipal;
+import com.engfred.bookstore.utils.SortWhitelist;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -15,12 +18,42 @@ import java.util.UUID;
 //Tells Spring to automatically implement common CRUD operations (like save(), findById(), findAll(), delete(), etc.) for the User entity.
 
 @Repository //Marks this interface as a Spring-managed bean (so it can be injected with @Autowired or constructor injection).
-public interface UserRepository extends JpaRepository<User, UUID> {
+public interface UserRepository extends JpaRepository<User, UUID>, SliceSpecificationExecutor<User> {
+    //Sorts of GET /authors, each read from a (field, id) index of the V7 and V9 migrations
+    SortWhitelist LISTING_SORTS = SortWhitelist.builder()
+            .ordering("firstname").ordering("createdAt")
+            .ordering("lastname", "firstname")
+            .build();
+
+    //Sorts of author search results, the matches are sorted rather than the table
+    SortWhitelist SEARCH_SORTS = SortWhitelist.builder()
+            .ordering("firstname").ordering("createdAt")
+            .ordering("lastname", "firstname")
+            .build();
+
     //This is a custom finder method — Spring Data JPA will automatically implement it using the method name.
     Optional<User> findByEmail(String email);
 
+    //Selects only what the JWT filter needs to authenticate a request, without loading the User entity
+    @Query("SELECT new com.engfred.bookstore.dto.models.UserPrincipal(u.id, u.email) FROM User u WHERE u.email = :email")
+    Optional<UserPrincipal> findPrincipalByEmail(@Param("email") String email);
+
+    //Served by the trigram indexes on lower(firstname), lower(lastname) and lower(email), see db/migration/V6__users_trigram_search.sql
     @Query("SELECT u FROM User u WHERE LOWER(u.firstname) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
             "OR LOWER(u.lastname) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
             "OR LOWER(u.email) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     Page<User> searchByKeyword(@Param("keyword") String keyword, Pageable pageable);
+
+    //Conditional GET checks: versions only, no entity or DTO is built
+    @Query("SELECT u.version AS version, u.updatedAt AS updatedAt FROM User u WHERE u.id = :id")
+    Optional<UserVersion> findVersionById(@Param("id") UUID id);
+
+    //Count is 0 when there is no such user
+    @Query("SELECT COUNT(u) AS count, COALESCE(SUM(u.version), 0) AS versionSum, MAX(u.updatedAt) AS lastModified FROM User u WHERE u.id = :id")
+    VersionSummary summarizeVersionsById(@Param("id") UUID id);
+
+    interface UserVersion {
+        long getVersion();
+        Date getUpdatedAt();
+    }
 }
@@ -0,0 +1,23 @@
+package com.engfred.bookstore.data.repository;
+
+import com.engfred.bookstore.data.entities.User;
+import org.springframework.data.jpa.domain.Specification;
+
+//Criteria counterparts of the UserRepository queries, combined with a keyset cursor for slice paging
+public final class UserSpecifications {
+
+    private UserSpecifications() {
+    }
+
+    //Same predicate as UserRepository.searchByKeyword
+    public static Specification<User> matchesKeyword(String keyword) {
+        return (root, query, cb) -> {
+            String pattern = "%" + keyword.toLowerCase() + "%";
+            return cb.or(
+                    cb.like(cb.lower(root.get("firstname")), pattern),
+                    cb.like(cb.lower(root.get("lastname")), pattern),
+                    cb.like(cb.lower(root.get("email")), pattern)
+            );
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package com.engfred.bookstore.data.repository;
+
+import java.util.Date;
+
+//Aggregate version of a set of rows: any insert, update or delete changes at least one of the three
+public interface VersionSummary {
+    long getCount();
+    long getVersionSum();
+    //Null when no row has been written since updated_at was added
+    Date getLastModified();
+}
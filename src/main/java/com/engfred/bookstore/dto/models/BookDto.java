@@ -1,5 +1,6 @@
 package com.engfred.bookstore.dto.models;
 
+import com.engfred.bookstore.data.entities.CoverImageStatus;
 import com.engfred.bookstore.data.entities.User;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -24,5 +25,8 @@ public class BookDto {
     private Date publishedAt;
     private String isbn;
     private String coverImageUrl;
+    private CoverImageStatus coverImageStatus;
+    private Date updatedAt;
+    private long version;
     private UserDto author;
 }
@@ -22,4 +22,6 @@ public class UserDto {
     private String imageUrl;
     private Gender gender;
     private Date createdAt;
+    private Date updatedAt;
+    private long version;
 }
@@ -0,0 +1,37 @@
+package com.engfred.bookstore.dto.models;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+//Lightweight, immutable view of an authenticated user, used instead of the full User entity on every request
+public record UserPrincipal(UUID id, String email, List<GrantedAuthority> authorities) implements UserDetails {
+
+    public UserPrincipal {
+        authorities = List.copyOf(authorities);
+    }
+
+    //Used by the JPQL constructor expression in UserRepository
+    public UserPrincipal(UUID id, String email) {
+        this(id, email, List.of());
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    //Tokens are verified by signature, the password hash is never loaded
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+}
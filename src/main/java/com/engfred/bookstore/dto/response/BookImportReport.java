@@ -0,0 +1,37 @@
+package com.engfred.bookstore.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+//Outcome of a bulk import, one row per record in file order (records are numbered from 1, blank lines and the CSV header excluded)
+@Data
+@NoArgsConstructor
+public class BookImportReport {
+
+    private int total;
+    private int imported;
+    private int failed;
+    private List<Row> rows = new ArrayList<>();
+
+    public enum Status {
+        IMPORTED,
+        FAILED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Row {
+        private int record;
+        private Status status;
+        private UUID bookId;
+        private List<String> errors;
+    }
+}
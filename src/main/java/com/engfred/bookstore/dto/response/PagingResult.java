@@ -1,22 +1,28 @@
 package com.engfred.bookstore.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.Collection;
 
+//In cursor mode the totals and page number are left out and nextCursor points at the following slice
 @Data
 @NoArgsConstructor
+@AllArgsConstructor
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PagingResult<T> {
 
     private Collection<T> content;
     private Integer totalPages;
-    private long totalElements;
+    private Long totalElements;
     private Integer size;
     private Integer page;
     private boolean empty;
+    private String nextCursor;
 
     public PagingResult(Collection<T> content, Integer totalPages, long totalElements, Integer size, Integer page, boolean empty) {
         this.content = content;
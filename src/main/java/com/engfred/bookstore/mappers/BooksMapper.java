@@ -3,20 +3,27 @@ package com.engfred.bookstore.mappers;
 import com.engfred.bookstore.data.entities.Book;
 import com.engfred.bookstore.dto.models.BookDto;
 import com.engfred.bookstore.dto.request.CreateBookRequest;
-import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
-import org.springframework.stereotype.Component;
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
 
-@Component
-@RequiredArgsConstructor
-public class BooksMapper {
-    private final ModelMapper modelMapper;
+//Implemented at compile time by MapStruct (BooksMapperImpl): plain getter/setter calls, no reflection per element
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING,
+        injectionStrategy = InjectionStrategy.CONSTRUCTOR,
+        uses = UserMapper.class)
+public interface BooksMapper {
 
-    public BookDto toDto(Book book) {
-        return modelMapper.map(book, BookDto.class);
-    }
+    BookDto toDto(Book book);
 
-    public Book toEntity(CreateBookRequest request) {
-        return modelMapper.map(request, Book.class);
-    }
+    //Cover image fields are filled by the upload pipeline, the author from the security context
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "coverImageUrl", ignore = true)
+    @Mapping(target = "coverImagePublicId", ignore = true)
+    @Mapping(target = "coverImageStatus", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "author", ignore = true)
+    Book toEntity(CreateBookRequest request);
 }
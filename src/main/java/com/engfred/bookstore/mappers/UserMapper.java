@@ -2,22 +2,20 @@ package com.engfred.bookstore.mappers;
 
 import com.engfred.bookstore.data.entities.User;
 import com.engfred.bookstore.dto.models.UserDto;
-import org.modelmapper.ModelMapper;
-import org.springframework.stereotype.Component;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
 
-@Component
-public class UserMapper {
-    private final ModelMapper modelMapper;
+//Implemented at compile time by MapStruct (UserMapperImpl)
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING)
+public interface UserMapper {
 
-    public UserMapper(ModelMapper modelMapper) {
-        this.modelMapper = modelMapper;
-    }
+    UserDto toDto(User user);
 
-    public UserDto toDto(User user) {
-        return modelMapper.map(user, UserDto.class);
-    }
-
-    public User toEntity(UserDto userDto) {
-        return modelMapper.map(userDto, User.class);
-    }
+    @Mapping(target = "password", ignore = true)
+    @Mapping(target = "profileImagePublicId", ignore = true)
+    @Mapping(target = "books", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    User toEntity(UserDto userDto);
 }
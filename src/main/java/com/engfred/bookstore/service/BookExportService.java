@@ -0,0 +1,10 @@
+package com.engfred.bookstore.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+public interface BookExportService {
+    //Writes every book (only those written at or after updatedSince when it is set) to output, in id order
+    void exportBooks(Date updatedSince, BookFileFormat format, OutputStream output) throws IOException;
+}
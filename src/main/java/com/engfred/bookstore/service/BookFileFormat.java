@@ -0,0 +1,29 @@
+package com.engfred.bookstore.service;
+
+import org.springframework.http.MediaType;
+
+//Record formats of the bulk import and export endpoints
+public enum BookFileFormat {
+    //One JSON object per line
+    NDJSON(BookFileFormat.NDJSON_VALUE),
+    //Header row naming the fields, then one book per row
+    CSV(BookFileFormat.CSV_VALUE);
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    BookFileFormat(String mediaType) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    //CSV for text/csv, NDJSON for anything else
+    public static BookFileFormat of(MediaType contentType) {
+        return CSV.mediaType.isCompatibleWith(contentType) ? CSV : NDJSON;
+    }
+}
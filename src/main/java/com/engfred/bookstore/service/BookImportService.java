@@ -0,0 +1,11 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.dto.response.BookImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface BookImportService {
+    //Imports CreateBookRequest records as books of the current user. Invalid records are reported and skipped, the rest are stored.
+    BookImportReport importBooks(InputStream input, BookFileFormat format) throws IOException;
+}
@@ -0,0 +1,39 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.UUID;
+
+//How BooksService.searchBooks resolves a keyword, selected with the bookstore.search.strategy property
+public interface BookSearchStrategy {
+    //The pageable is sorted by the client's sort, or by BooksRepository.RELEVANCE when the strategy ranks
+    Page<Book> search(String keyword, Pageable pageable);
+
+    //The matches of search as a filter for cursor (keyset) paging, null when the strategy can't express them as one:
+    //cursor searches are then rejected rather than answered with other matches than the pages
+    default Specification<Book> keysetFilter(String keyword) {
+        return null;
+    }
+
+    //Whether the strategy accepts the BooksRepository.RELEVANCE sort, searches naming no sort are then ranked
+    default boolean ranksByRelevance() {
+        return false;
+    }
+
+    //Write notifications for strategies that keep their own index; database-backed ones ignore them
+    default void onBookSaved(Book book) {
+    }
+
+    default void onBookDeleted(UUID bookId) {
+    }
+
+    default void onAuthorUpdated(User author) {
+    }
+
+    default void onAuthorDeleted(UUID authorId) {
+    }
+}
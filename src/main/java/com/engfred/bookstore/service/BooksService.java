@@ -4,6 +4,7 @@ import com.engfred.bookstore.dto.models.BookDto;
 import com.engfred.bookstore.dto.request.CreateBookRequest;
 import com.engfred.bookstore.dto.request.UpdateBookRequest;
 import com.engfred.bookstore.dto.response.PagingResult;
+import com.engfred.bookstore.utils.ResourceVersion;
 import org.springframework.security.access.AccessDeniedException;
 
 import java.io.IOException;
@@ -14,7 +15,18 @@ public interface BooksService {
     BookDto updateBook(UpdateBookRequest request, UUID bookId) throws AccessDeniedException, IOException;
     PagingResult<BookDto> getAllBooks(int pageNumber, int pageSize, String sortField);
     PagingResult<BookDto> getBooksByAuthor(UUID authorId, int pageNumber, int pageSize, String sortField);
+    //A null sortField ranks the matches when the search strategy can, "relevance" asks for it explicitly
     PagingResult<BookDto> searchBooks(String keyword, int pageNumber, int pageSize, String sortField);
+    //Keyset (cursor) variants: no total count, "after" is the nextCursor of the previous slice or null for the first one
+    PagingResult<BookDto> getAllBooksAfter(String after, int pageSize, String sortField);
+    PagingResult<BookDto> getBooksByAuthorAfter(UUID authorId, String after, int pageSize, String sortField);
+    PagingResult<BookDto> searchBooksAfter(String keyword, String after, int pageSize, String sortField);
     BookDto getBookById(UUID id);
+    //Versions of what the matching reads return, for conditional GETs
+    ResourceVersion getBookVersion(UUID id);
+    ResourceVersion getAllBooksVersion();
+    ResourceVersion getBooksByAuthorVersion(UUID authorId);
+    //Folds the pending catalogue changes into the catalogue version, which stays the same
+    void compactCatalogueVersion();
     void deleteBook(UUID bookId) throws AccessDeniedException;
 }
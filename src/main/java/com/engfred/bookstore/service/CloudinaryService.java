@@ -5,8 +5,12 @@ import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 public interface CloudinaryService {
     CloudinaryUploadResult uploadImage(MultipartFile file, ImageType imageType) throws IOException;
+    //Uploads an image already stored locally, its type having been checked when it was received
+    CloudinaryUploadResult uploadImage(Path image, ImageType imageType) throws IOException;
+    //Drops one reference to the image, the stored copy is destroyed together with the last one
     void deleteImage(String publicId) throws IOException;
 }
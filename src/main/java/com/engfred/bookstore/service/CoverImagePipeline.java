@@ -0,0 +1,12 @@
+package com.engfred.bookstore.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.UUID;
+
+public interface CoverImagePipeline {
+    //Stages the image locally and uploads it in the background; the book must be saved with a PENDING cover status
+    void submit(UUID bookId, MultipartFile coverImage);
+    //Drops the book's pending upload, if any
+    void cancel(UUID bookId);
+}
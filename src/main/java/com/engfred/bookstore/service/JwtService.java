@@ -1,20 +1,35 @@
 package com.engfred.bookstore.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
-import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 //3.
 @Service
@@ -26,13 +41,38 @@ public class JwtService {
     @Value("${jwt.expiration-time}")
     private long jwtExpirationTime;
 
+    @Value("${jwt.cache.maximum-size:10000}")
+    private long tokenCacheMaximumSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    //Built once at startup instead of decoding the secret for every token
+    private SecretKey signInKey;
+    private JwtParser jwtParser;
+
+    //Verified claims keyed by the token's SHA-256 digest; entries expire together with the token itself
+    private Cache<String, Claims> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        this.signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        this.jwtParser = Jwts.parser().verifyWith(signInKey).build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(tokenCacheMaximumSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.tokens", "cache.manager", "jwtService", "name", "jwt.tokens");
+    }
+
     public String generateToken(String email) {
         var now = Instant.now();
         return Jwts.builder()
                 .subject(email)
                 .issuedAt(Date.from(now))
                 .expiration(Date.from(now.plus(jwtExpirationTime, ChronoUnit.HOURS)))
-                .signWith(getSignInKey())
+                .signWith(signInKey)
                 .compact();
     }
 
@@ -45,18 +85,36 @@ public class JwtService {
         return userEmail.equals(userDetails.getUsername()) && !isTokenExpired(token);
     }
 
+    //Hit/miss counters of the verified token cache, a miss being a full signature verification
+    public CacheStats tokenCacheStats() {
+        return verifiedTokens.stats();
+    }
+
     private Claims getTokenBody(String token) throws AccessDeniedException {
+        final String digest = digest(token);
+        Claims cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null) {
+            return cached;
+        }
+
+        //Only cache misses are timed, they are the ones verifying a signature
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "valid";
         try {
-            return Jwts
-                    .parser()
-                    .setSigningKey(getSignInKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            Claims claims = jwtParser.parseSignedClaims(token).getPayload();
+            verifiedTokens.put(digest, claims);
+            return claims;
         } catch (ExpiredJwtException e) {
+            outcome = "expired";
             throw new AccessDeniedException("Access denied: " + e.getMessage());
         } catch (JwtException e) {
+            outcome = "invalid";
             throw new AccessDeniedException("Invalid token: " + e.getMessage());
+        } finally {
+            sample.stop(Timer.builder("bookstore.jwt.parse")
+                    .description("Parsing and signature verification of tokens missing from the cache")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
         }
     }
 
@@ -65,9 +123,37 @@ public class JwtService {
         return claims.getExpiration().before(new Date());
     }
 
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    //Evicts a cached token at the instant its "exp" claim passes
+    private class TokenExpiry implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String digest, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return TimeUnit.HOURS.toNanos(jwtExpirationTime);
+            }
+            long remainingMillis = expiration.getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String digest, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String digest, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
 
@@ -3,17 +3,27 @@ package com.engfred.bookstore.service;
 import com.engfred.bookstore.dto.models.UserDto;
 import com.engfred.bookstore.dto.request.UpdateUserRequest;
 import com.engfred.bookstore.dto.response.PagingResult;
+import com.engfred.bookstore.utils.ResourceVersion;
+import org.springframework.data.domain.Sort;
 
 import java.io.IOException;
 import java.nio.file.AccessDeniedException;
 import java.util.UUID;
 
 public interface UserService {
-    PagingResult<UserDto> getAllUsers(int pageNumber, int pageSize, String sortValue);
+    //Fields without a ":asc"/":desc" suffix in sortField take the given direction
+    PagingResult<UserDto> getAllUsers(int pageNumber, int pageSize, String sortField, Sort.Direction direction);
 
     PagingResult<UserDto> searchAuthors(String keyword, int pageNumber, int pageSize, String sortField);
 
+    //Keyset (cursor) variants: no total count, "after" is the nextCursor of the previous slice or null for the first one
+    PagingResult<UserDto> getAllUsersAfter(String after, int pageSize, String sortField, Sort.Direction direction);
+
+    PagingResult<UserDto> searchAuthorsAfter(String keyword, String after, int pageSize, String sortField);
+
     UserDto getUserById(UUID userId);
+    //Version of what getUserById returns, for conditional GETs
+    ResourceVersion getUserVersion(UUID userId);
     void deleteUser() throws AccessDeniedException;
     UserDto updateUser(UpdateUserRequest request) throws IOException;
 }
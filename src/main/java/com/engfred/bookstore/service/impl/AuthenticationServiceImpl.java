@@ -1,6 +1,7 @@
 package com.engfred.bookstore.service.impl;
 
 
+import com.engfred.bookstore.config.ReadYourWritesDataSource;
 import com.engfred.bookstore.data.entities.ImageType;
 import com.engfred.bookstore.data.entities.User;
 import com.engfred.bookstore.data.repository.UserRepository;
@@ -67,7 +68,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
                         request.getPassword()
                 )
         );
-        User user = userRepository.findByEmail(request.getEmail()).orElseThrow();
+        User user = ReadYourWritesDataSource.onPrimary(() -> userRepository.findByEmail(request.getEmail())).orElseThrow();
         return userMapper.toDto(user);
     }
 }
@@ -0,0 +1,135 @@
+package com.engfred.bookstore.service.impl;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.CoverImageStatus;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.mappers.BooksMapper;
+import com.engfred.bookstore.service.BookExportService;
+import com.engfred.bookstore.service.BookFileFormat;
+import com.engfred.bookstore.service.impl.BookSearchIndex.Document;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/*
+ * Streams the catalogue straight from a forward-only JDBC cursor to the response, one book at a time.
+ * The persistence context is cleared every EXPORT_FETCH_SIZE books, so memory stays flat however large the catalogue is.
+ */
+@Service
+public class BookExportServiceImpl implements BookExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookExportServiceImpl.class);
+
+    private final BooksRepository booksRepository;
+    private final BooksMapper bookMapper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectWriter ndjsonWriter;
+    private final ObjectWriter csvWriter;
+
+    public BookExportServiceImpl(BooksRepository booksRepository,
+                                 BooksMapper bookMapper,
+                                 EntityManager entityManager,
+                                 PlatformTransactionManager transactionManager,
+                                 ObjectMapper objectMapper) {
+        this.booksRepository = booksRepository;
+        this.bookMapper = bookMapper;
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        //Flushed by the response buffer, not after every line
+        this.ndjsonWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        CsvMapper csvMapper = new CsvMapper();
+        csvMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.csvWriter = csvMapper.writer(csvMapper.schemaFor(CsvRow.class).withHeader());
+    }
+
+    @Override
+    public void exportBooks(Date updatedSince, BookFileFormat format, OutputStream output) throws IOException {
+        logger.info("Exporting books as {} updated since: {}", format, updatedSince);
+        long start = System.currentTimeMillis();
+
+        try {
+            long exported = readOnlyTransaction.execute(status -> {
+                try (Stream<Book> books = updatedSince == null
+                        ? booksRepository.streamAll()
+                        : booksRepository.streamUpdatedSince(updatedSince)) {
+                    return format == BookFileFormat.CSV
+                            ? writeCsv(books.iterator(), output)
+                            : writeNdjson(books.iterator(), output);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            logger.info("Exported {} books in {} ms", exported, System.currentTimeMillis() - start);
+        } catch (UncheckedIOException e) {
+            //Usually the client going away mid-export
+            throw e.getCause();
+        }
+    }
+
+    private long writeNdjson(Iterator<Book> books, OutputStream output) throws IOException {
+        long count = 0;
+        try (JsonGenerator generator = ndjsonWriter.createGenerator(output)) {
+            while (books.hasNext()) {
+                BookDto book = bookMapper.toDto(books.next());
+                ndjsonWriter.writeValue(generator, book);
+                generator.writeRaw('\n');
+                clearPeriodically(++count);
+            }
+        }
+        return count;
+    }
+
+    private long writeCsv(Iterator<Book> books, OutputStream output) throws IOException {
+        long count = 0;
+        try (SequenceWriter rows = csvWriter.writeValues(output)) {
+            while (books.hasNext()) {
+                rows.write(CsvRow.of(books.next()));
+                clearPeriodically(++count);
+            }
+        }
+        return count;
+    }
+
+    //Detaches what has been written, the cursor keeps going
+    private void clearPeriodically(long count) {
+        if (count % BooksRepository.EXPORT_FETCH_SIZE == 0) {
+            entityManager.clear();
+        }
+    }
+
+    //CSV has no nesting, the author is flattened to its id and display name
+    @JsonPropertyOrder({"id", "title", "description", "genre", "pages", "publishedAt", "isbn",
+            "coverImageUrl", "coverImageStatus", "authorId", "authorName", "createdAt", "updatedAt"})
+    record CsvRow(UUID id, String title, String description, String genre, int pages, Date publishedAt, String isbn,
+                  String coverImageUrl, CoverImageStatus coverImageStatus, UUID authorId, String authorName,
+                  Date createdAt, Date updatedAt) {
+
+        static CsvRow of(Book book) {
+            return new CsvRow(book.getId(), book.getTitle(), book.getDescription(), book.getGenre(), book.getPages(),
+                    book.getPublishedAt(), book.getIsbn(), book.getCoverImageUrl(), book.getCoverImageStatus(),
+                    book.getAuthor().getId(), Document.authorName(book.getAuthor()),
+                    book.getCreatedAt(), book.getUpdatedAt());
+        }
+    }
+}
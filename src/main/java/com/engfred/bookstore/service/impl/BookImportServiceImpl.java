@@ -0,0 +1,238 @@
+package com.engfred.bookstore.service.impl;
+
+import com.engfred.bookstore.config.PageResponseCache;
+import com.engfred.bookstore.config.ReadYourWritesDataSource;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.request.CreateBookRequest;
+import com.engfred.bookstore.dto.response.BookImportReport;
+import com.engfred.bookstore.mappers.BooksMapper;
+import com.engfred.bookstore.service.BookFileFormat;
+import com.engfred.bookstore.service.BookImportService;
+import com.engfred.bookstore.service.BookSearchStrategy;
+import com.engfred.bookstore.utils.SecurityUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Reads the records one at a time from the request body and stores the valid ones in chunks.
+ * Each chunk is one transaction whose inserts Hibernate sends in JDBC batches (hibernate.jdbc.batch_size),
+ * the persistence context being flushed and cleared after every batch, so memory stays flat whatever the file size.
+ */
+@Service
+public class BookImportServiceImpl implements BookImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookImportServiceImpl.class);
+
+    private final UserRepository userRepository;
+    private final BooksMapper bookMapper;
+    private final BookSearchStrategy bookSearchStrategy;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final PageResponseCache pageResponseCache;
+    private final CsvMapper csvMapper = new CsvMapper();
+    private final int chunkSize;
+    private final int batchSize;
+
+    public BookImportServiceImpl(UserRepository userRepository,
+                                 BooksMapper bookMapper,
+                                 BookSearchStrategy bookSearchStrategy,
+                                 ObjectMapper objectMapper,
+                                 Validator validator,
+                                 EntityManager entityManager,
+                                 TransactionTemplate transactionTemplate,
+                                 PageResponseCache pageResponseCache,
+                                 @Value("${bookstore.import.chunk-size:500}") int chunkSize,
+                                 @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.userRepository = userRepository;
+        this.bookMapper = bookMapper;
+        this.bookSearchStrategy = bookSearchStrategy;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.pageResponseCache = pageResponseCache;
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public BookImportReport importBooks(InputStream input, BookFileFormat format) throws IOException {
+        String currentUserEmail = SecurityUtils.getCurrentUserEmail();
+        logger.info("Importing {} books for: {}", format, currentUserEmail);
+
+        //Resolved once on the primary, every imported book references the same (detached) author
+        User author = ReadYourWritesDataSource.onPrimary(() -> userRepository.findByEmail(currentUserEmail))
+                .orElseThrow(() -> {
+                    logger.error("Author not found for email: {}", currentUserEmail);
+                    return new EntityNotFoundException("Author not found");
+                });
+
+        long start = System.currentTimeMillis();
+        ImportRun run = new ImportRun(author);
+        Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        if (format == BookFileFormat.CSV) {
+            readCsv(reader, run);
+        } else {
+            readNdjson(reader, run);
+        }
+        BookImportReport report = run.finish();
+
+        logger.info("Imported {} of {} books for: {} in {} ms ({} rejected)", report.getImported(), report.getTotal(),
+                currentUserEmail, System.currentTimeMillis() - start, report.getFailed());
+        return report;
+    }
+
+    private void readNdjson(Reader reader, ImportRun run) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int record = run.nextRecord();
+            try {
+                run.accept(record, objectMapper.readValue(line, CreateBookRequest.class));
+            } catch (JsonProcessingException e) {
+                run.reject(record, List.of("Malformed record: " + e.getOriginalMessage()));
+            }
+        }
+    }
+
+    //Cells are read as text and bound afterwards, so a bad value only fails its own row
+    private void readCsv(Reader reader, ImportRun run) throws IOException {
+        CsvSchema schema = CsvSchema.emptySchema().withHeader();
+        try (MappingIterator<Map<String, String>> rows = csvMapper.readerForMapOf(String.class).with(schema).readValues(reader)) {
+            while (rows.hasNext()) {
+                int record = run.nextRecord();
+                try {
+                    Map<String, String> row = rows.next();
+                    run.accept(record, objectMapper.convertValue(row, CreateBookRequest.class));
+                } catch (RuntimeJsonMappingException | IllegalArgumentException e) {
+                    run.reject(record, List.of("Malformed record: " + rootMessage(e)));
+                }
+            }
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof JsonProcessingException jsonException ? jsonException.getOriginalMessage() : cause.getMessage();
+    }
+
+    private final class ImportRun {
+
+        private final User author;
+        private final BookImportReport report = new BookImportReport();
+        private final List<Book> pendingBooks = new ArrayList<>();
+        private final List<Integer> pendingRecords = new ArrayList<>();
+        private int records;
+
+        ImportRun(User author) {
+            this.author = author;
+        }
+
+        int nextRecord() {
+            return ++records;
+        }
+
+        void accept(int record, CreateBookRequest request) {
+            if (request.getCoverImage() != null) {
+                reject(record, List.of("Cover images can't be imported, upload them by updating the book"));
+                return;
+            }
+            Set<ConstraintViolation<CreateBookRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                reject(record, violations.stream().map(ConstraintViolation::getMessage).sorted().toList());
+                return;
+            }
+
+            Book book = bookMapper.toEntity(request);
+            book.setAuthor(author);
+            pendingBooks.add(book);
+            pendingRecords.add(record);
+            if (pendingBooks.size() >= chunkSize) {
+                storePending();
+            }
+        }
+
+        void reject(int record, List<String> errors) {
+            report.getRows().add(new BookImportReport.Row(record, BookImportReport.Status.FAILED, null, errors));
+            report.setFailed(report.getFailed() + 1);
+        }
+
+        BookImportReport finish() {
+            storePending();
+            report.setTotal(records);
+            report.getRows().sort(Comparator.comparingInt(BookImportReport.Row::getRecord));
+            return report;
+        }
+
+        private void storePending() {
+            if (pendingBooks.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (int i = 0; i < pendingBooks.size(); i++) {
+                        entityManager.persist(pendingBooks.get(i));
+                        if ((i + 1) % batchSize == 0) {
+                            entityManager.flush();
+                            entityManager.clear();
+                        }
+                    }
+                    entityManager.flush();
+                    entityManager.clear();
+                });
+                for (int i = 0; i < pendingBooks.size(); i++) {
+                    Book book = pendingBooks.get(i);
+                    bookSearchStrategy.onBookSaved(book);
+                    report.getRows().add(new BookImportReport.Row(pendingRecords.get(i), BookImportReport.Status.IMPORTED, book.getId(), null));
+                }
+                report.setImported(report.getImported() + pendingBooks.size());
+                pageResponseCache.evictAll();
+            } catch (PersistenceException | DataAccessException | TransactionException e) {
+                //The whole chunk was rolled back
+                logger.error("Failed to store {} imported books: {}", pendingBooks.size(), e.getMessage());
+                List<String> errors = List.of("Could not be stored: " + rootMessage(e));
+                pendingRecords.forEach(record -> reject(record, errors));
+            }
+            pendingBooks.clear();
+            pendingRecords.clear();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.engfred.bookstore.service.impl;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/*
+ * In-memory inverted index over book titles, genres and author names.
+ * Books get compact int doc ids, reused once their book is removed, and every lower-cased token maps to a sorted
+ * int[] posting list. A query matches the books where each query token is a prefix of one of their tokens.
+ * Matches are ordered the way the database orders the same sort (see textSortKey), so a page reads the same whether
+ * the index or a query served it. Reads share a lock and writes (one book at a time) take it exclusively.
+ */
+public class BookSearchIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    //Sort key of text under a bytewise collation (PostgreSQL's C and POSIX, H2): UTF-8 bytes compare in code point order
+    public static final Function<String, byte[]> BINARY = text -> text.getBytes(StandardCharsets.UTF_8);
+
+    //Everything needed to match, order and re-index a book without going back to the database
+    public record Document(UUID bookId, UUID authorId, String title, String genre, String authorName,
+                           int pages, long publishedAt, long createdAt, String isbn) {
+
+        //The book's author must be loaded
+        public static Document of(Book book) {
+            return new Document(
+                    book.getId(),
+                    book.getAuthor().getId(),
+                    book.getTitle(),
+                    book.getGenre(),
+                    authorName(book.getAuthor()),
+                    book.getPages(),
+                    book.getPublishedAt() != null ? book.getPublishedAt().getTime() : 0L,
+                    book.getCreatedAt() != null ? book.getCreatedAt().getTime() : 0L,
+                    book.getIsbn()
+            );
+        }
+
+        public static String authorName(User author) {
+            return author.getLastname() == null
+                    ? author.getFirstname()
+                    : author.getFirstname() + " " + author.getLastname();
+        }
+
+        Document withAuthorName(String newAuthorName) {
+            return new Document(bookId, authorId, title, genre, newAuthorName, pages, publishedAt, createdAt, isbn);
+        }
+    }
+
+    //One page of matches, in the requested order, with the total number of matches
+    public record Hits(List<UUID> bookIds, int total) {
+    }
+
+    //A document with the sort keys of its text fields, computed once when it is put
+    private record Indexed(Document document, byte[] titleKey, byte[] genreKey) {
+    }
+
+    private static final Map<String, Comparator<Indexed>> SORTABLE_FIELDS = Map.of(
+            "id", (a, b) -> compareUuids(a.document().bookId(), b.document().bookId()),
+            "title", (a, b) -> Arrays.compareUnsigned(a.titleKey(), b.titleKey()),
+            "genre", (a, b) -> Arrays.compareUnsigned(a.genreKey(), b.genreKey()),
+            "pages", Comparator.comparingInt(indexed -> indexed.document().pages()),
+            "publishedAt", Comparator.comparingLong(indexed -> indexed.document().publishedAt()),
+            "createdAt", Comparator.comparingLong(indexed -> indexed.document().createdAt())
+    );
+
+    private final Function<String, byte[]> textSortKey;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, PostingList> postings = new TreeMap<>();
+    private final Map<UUID, Integer> docIdsByBook = new HashMap<>();
+    private Indexed[] documents = new Indexed[INITIAL_CAPACITY];
+    private String[][] documentTerms = new String[INITIAL_CAPACITY][];
+    private int nextDocId;
+    //Doc ids of removed books, handed out again before nextDocId grows
+    private int[] freeDocIds = new int[16];
+    private int freeDocIdCount;
+
+    //Text is ordered by comparing the keys textSortKey gives as unsigned bytes
+    public BookSearchIndex(Function<String, byte[]> textSortKey) {
+        this.textSortKey = textSortKey;
+    }
+
+    /*
+     * Sort keys for a PostgreSQL database collation (pg_database.datcollate): bytewise for C and POSIX, otherwise
+     * the collation rules of its locale ("en_US.UTF-8" -> en-US) at tertiary strength, which like libc and ICU
+     * order case and accents after the letters themselves.
+     */
+    public static Function<String, byte[]> textSortKey(String collation) {
+        if (collation == null || collation.isBlank() || collation.equals("C") || collation.startsWith("C.")
+                || collation.equals("POSIX") || collation.equals("ucs_basic")) {
+            return BINARY;
+        }
+        Collator collator = Collator.getInstance(Locale.forLanguageTag(collation.split("\\.")[0].replace('_', '-')));
+        collator.setStrength(Collator.TERTIARY);
+        return text -> collator.getCollationKey(text).toByteArray();
+    }
+
+    //PostgreSQL and H2 compare uuids byte by byte, UUID.compareTo compares the two halves as signed longs
+    static int compareUuids(UUID a, UUID b) {
+        int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    //Adds the book, or re-indexes it in place when it is already known
+    public void put(Document document) {
+        Indexed indexed = new Indexed(document, textSortKey.apply(document.title()), textSortKey.apply(document.genre()));
+        lock.writeLock().lock();
+        try {
+            Integer existing = docIdsByBook.get(document.bookId());
+            int docId;
+            if (existing != null) {
+                docId = existing;
+                unlinkTerms(docId);
+            } else {
+                docId = allocateDocId();
+                docIdsByBook.put(document.bookId(), docId);
+            }
+
+            String[] terms = terms(document);
+            for (String term : terms) {
+                postings.computeIfAbsent(term, key -> new PostingList()).add(docId);
+            }
+            documents[docId] = indexed;
+            documentTerms[docId] = terms;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(UUID bookId) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIdsByBook.remove(bookId);
+            if (docId != null) {
+                unlinkTerms(docId);
+                documents[docId] = null;
+                documentTerms[docId] = null;
+                freeDocId(docId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void renameAuthor(UUID authorId, String authorName) {
+        for (Document document : documentsOf(authorId)) {
+            put(document.withAuthorName(authorName));
+        }
+    }
+
+    public void removeAuthor(UUID authorId) {
+        for (Document document : documentsOf(authorId)) {
+            remove(document.bookId());
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docIdsByBook.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Whether every property of a Spring Data sort is held by the index
+    public static boolean canOrder(Sort sort) {
+        return sort.stream().allMatch(order -> SORTABLE_FIELDS.containsKey(order.getProperty()));
+    }
+
+    //Ends with the id tiebreaker, ascending like the queries' unless the sort names it
+    private static Comparator<Indexed> comparator(Sort sort) {
+        Comparator<Indexed> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Indexed> field = SORTABLE_FIELDS.get(order.getProperty());
+            field = order.isAscending() ? field : field.reversed();
+            comparator = comparator == null ? field : comparator.thenComparing(field);
+        }
+        Comparator<Indexed> tiebreaker = SORTABLE_FIELDS.get("id");
+        return comparator == null ? tiebreaker : comparator.thenComparing(tiebreaker);
+    }
+
+    //Returns null when the query has no token to match on. The sort must pass canOrder.
+    public Hits search(String query, Sort sort, long offset, int limit) {
+        String[] tokens = tokenize(query).toArray(String[]::new);
+        if (tokens.length == 0) {
+            return null;
+        }
+        Comparator<Indexed> order = comparator(sort);
+
+        lock.readLock().lock();
+        try {
+            BitSet matches = null;
+            for (String token : tokens) {
+                BitSet tokenMatches = new BitSet(nextDocId);
+                //Every term starting with the token: [token, token + U+FFFF)
+                for (PostingList postingList : postings.subMap(token, true, token + Character.MAX_VALUE, false).values()) {
+                    postingList.addTo(tokenMatches);
+                }
+                if (matches == null) {
+                    matches = tokenMatches;
+                } else {
+                    matches.and(tokenMatches);
+                }
+                if (matches.isEmpty()) {
+                    return new Hits(List.of(), 0);
+                }
+            }
+
+            Indexed[] hits = new Indexed[matches.cardinality()];
+            int i = 0;
+            for (int docId = matches.nextSetBit(0); docId >= 0; docId = matches.nextSetBit(docId + 1)) {
+                hits[i++] = documents[docId];
+            }
+            Arrays.sort(hits, order);
+
+            int from = (int) Math.min(offset, hits.length);
+            int to = (int) Math.min((long) from + limit, hits.length);
+            List<UUID> page = new ArrayList<>(to - from);
+            for (int j = from; j < to; j++) {
+                page.add(hits[j].document().bookId());
+            }
+            return new Hits(page, hits.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static String[] terms(Document document) {
+        Set<String> terms = tokenize(document.title());
+        terms.addAll(tokenize(document.genre()));
+        terms.addAll(tokenize(document.authorName()));
+        return terms.toArray(String[]::new);
+    }
+
+    private List<Document> documentsOf(UUID authorId) {
+        lock.readLock().lock();
+        try {
+            List<Document> result = new ArrayList<>();
+            for (Integer docId : docIdsByBook.values()) {
+                if (documents[docId].document().authorId().equals(authorId)) {
+                    result.add(documents[docId].document());
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void unlinkTerms(int docId) {
+        for (String term : documentTerms[docId]) {
+            PostingList postingList = postings.get(term);
+            if (postingList != null && postingList.remove(docId) && postingList.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    //A freed id first, so that churn doesn't grow the arrays: they stay as large as the most books indexed at once
+    private int allocateDocId() {
+        if (freeDocIdCount > 0) {
+            return freeDocIds[--freeDocIdCount];
+        }
+        if (nextDocId == documents.length) {
+            documents = Arrays.copyOf(documents, documents.length * 2);
+            documentTerms = Arrays.copyOf(documentTerms, documentTerms.length * 2);
+        }
+        return nextDocId++;
+    }
+
+    //Its terms are unlinked, no posting list still holds it
+    private void freeDocId(int docId) {
+        if (freeDocIdCount == freeDocIds.length) {
+            freeDocIds = Arrays.copyOf(freeDocIds, freeDocIdCount * 2);
+        }
+        freeDocIds[freeDocIdCount++] = docId;
+    }
+
+    //Sorted, duplicate-free primitive list of doc ids
+    private static final class PostingList {
+        private int[] docIds = new int[4];
+        private int size;
+
+        void add(int docId) {
+            int position = Arrays.binarySearch(docIds, 0, size, docId);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+            }
+            System.arraycopy(docIds, position, docIds, position + 1, size - position);
+            docIds[position] = docId;
+            size++;
+        }
+
+        boolean remove(int docId) {
+            int position = Arrays.binarySearch(docIds, 0, size, docId);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(docIds, position + 1, docIds, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void addTo(BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(docIds[i]);
+            }
+        }
+    }
+}
@@ -1,102 +1,156 @@
 package com.engfred.bookstore.service.impl;
 
+import com.engfred.bookstore.config.CacheConfig;
+import com.engfred.bookstore.config.PageResponseCache;
+import com.engfred.bookstore.config.ReadYourWritesDataSource;
 import com.engfred.bookstore.data.entities.Book;
-import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.entities.CoverImageStatus;
 import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BookSpecifications;
 import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.CatalogueVersionRepository;
 import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.data.repository.VersionSummary;
 import com.engfred.bookstore.dto.models.BookDto;
 import com.engfred.bookstore.dto.request.CreateBookRequest;
 import com.engfred.bookstore.dto.request.UpdateBookRequest;
-import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
 import com.engfred.bookstore.dto.response.PagingResult;
 import com.engfred.bookstore.mappers.BooksMapper;
+import com.engfred.bookstore.service.BookSearchStrategy;
 import com.engfred.bookstore.service.BooksService;
 import com.engfred.bookstore.service.CloudinaryService;
+import com.engfred.bookstore.service.CoverImagePipeline;
+import com.engfred.bookstore.utils.ImageFiles;
+import com.engfred.bookstore.utils.KeysetCursor;
+import com.engfred.bookstore.utils.ResourceVersion;
 import com.engfred.bookstore.utils.SecurityUtils;
+import com.engfred.bookstore.utils.Updates;
+import io.micrometer.core.annotation.Timed;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.*;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
 
+//Every method is timed in bookstore.service, tagged with its class and name
 @Service
 @RequiredArgsConstructor
+@Timed("bookstore.service")
 public class BooksServiceImpl implements BooksService {
 
     private final BooksRepository booksRepository;
     private final UserRepository userRepository;
     private final BooksMapper bookMapper;
     private final CloudinaryService cloudinaryService;
+    private final BookSearchStrategy bookSearchStrategy;
+    private final CoverImagePipeline coverImagePipeline;
+    private final PageResponseCache pageResponseCache;
+    private final CatalogueVersionRepository catalogueVersionRepository;
+    private final TransactionTemplate transactionTemplate;
 
     private static final Logger logger = LoggerFactory.getLogger(BooksServiceImpl.class);
 
+    private static final String DEFAULT_SORT = "title";
+
     @Override
     public BookDto createBook(CreateBookRequest request) throws IOException {
         logger.info("Creating a book with title: {}", request.getTitle());
 
         String currentUserEmail = SecurityUtils.getCurrentUserEmail();
 
-        User author = userRepository.findByEmail(currentUserEmail)
+        //On the primary, the author of a new book may not have replicated yet
+        User author = ReadYourWritesDataSource.onPrimary(() -> userRepository.findByEmail(currentUserEmail))
                 .orElseThrow(() -> {
                     logger.error("Author not found for email: {}", currentUserEmail);
                     return new EntityNotFoundException("Author not found");
                 });
 
-        logger.info("Author found: {}", author.getEmail());
+        logger.debug("Author found: {}", author.getEmail());
 
-        // Upload image if present
-        CloudinaryUploadResult uploadResult = null;
-        if (request.getCoverImage() != null && !request.getCoverImage().isEmpty()) {
-            uploadResult = cloudinaryService.uploadImage(request.getCoverImage(), ImageType.BOOK_COVER);
+        boolean hasCoverImage = request.getCoverImage() != null && !request.getCoverImage().isEmpty();
+        if (hasCoverImage) {
+            ImageFiles.requireSupportedImage(request.getCoverImage());
         }
 
         Book book = bookMapper.toEntity(request);
         book.setAuthor(author);
-
-        if (uploadResult != null) {
-            book.setCoverImageUrl(uploadResult.imageUrl());
-            book.setCoverImagePublicId(uploadResult.publicId());
-        }
+        // The cover is uploaded in the background once the book exists
+        book.setCoverImageStatus(hasCoverImage ? CoverImageStatus.PENDING : CoverImageStatus.NONE);
 
         Book savedBook = booksRepository.save(book);
+        bookSearchStrategy.onBookSaved(savedBook);
+        pageResponseCache.evictAll();
+        if (hasCoverImage) {
+            coverImagePipeline.submit(savedBook.getId(), request.getCoverImage());
+        }
         logger.info("Book created successfully with ID: {}", savedBook.getId());
 
         return bookMapper.toDto(savedBook);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public PagingResult<BookDto> getAllBooks(int pageNumber, int pageSize, String sortField) {
-        logger.info("Fetching all books - Page: {}, Size: {}, Sort: {}", pageNumber, pageSize, sortField);
+        //Read paths log at debug, guarded when the arguments need an array or boxing
+        if (logger.isDebugEnabled()) {
+            logger.debug("Fetching all books - Page: {}, Size: {}, Sort: {}", pageNumber, pageSize, sortField);
+        }
 
-        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, Sort.by(sortField));
+        Sort sort = BooksRepository.LISTING_SORTS.resolve(sortField, DEFAULT_SORT, Sort.Direction.ASC);
+        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, sort);
         final Page<Book> entities = booksRepository.findAll(pageable);
 
-        logger.info("Fetched {} books", entities.getContent().size());
+        logger.debug("Fetched {} books", entities.getContent().size());
         return toPagingResult(entities);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public PagingResult<BookDto> searchBooks(String keyword, int pageNumber, int pageSize, String sortField) {
-        logger.info("Searching books with keyword: '{}'", keyword);
+        logger.debug("Searching books with keyword: '{}'", keyword);
 
-        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, Sort.by(sortField));
-        Page<Book> booksPage = booksRepository.searchBooks(keyword.trim(), pageable);
+        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, searchSort(sortField));
+        Page<Book> booksPage = bookSearchStrategy.search(keyword.trim(), pageable);
 
-        logger.info("Search result: {} books found", booksPage.getTotalElements());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Search result: {} books found", booksPage.getTotalElements());
+        }
 
         return toPagingResult(booksPage);
     }
 
+    //Ranked when the strategy can and the client names no sort, otherwise the client's sort, by title by default
+    private Sort searchSort(String sortField) {
+        if (sortField == null || sortField.isBlank()) {
+            sortField = bookSearchStrategy.ranksByRelevance() ? BooksRepository.RELEVANCE : DEFAULT_SORT;
+        }
+        if (!sortField.equals(BooksRepository.RELEVANCE)) {
+            return BooksRepository.SEARCH_SORTS.resolve(sortField, DEFAULT_SORT, Sort.Direction.ASC);
+        }
+        if (!bookSearchStrategy.ranksByRelevance()) {
+            throw new IllegalArgumentException("Sort '" + BooksRepository.RELEVANCE + "' needs the fulltext search strategy");
+        }
+        return Sort.by(Sort.Direction.DESC, BooksRepository.RELEVANCE);
+    }
+
     @Override
+    @Transactional(readOnly = true)
     public PagingResult<BookDto> getBooksByAuthor(UUID authorId, int pageNumber, int pageSize, String sortField) {
-        logger.info("Fetching books for author ID: {} - Page: {}, Size: {}, Sort: {}", authorId, pageNumber, pageSize, sortField);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Fetching books for author ID: {} - Page: {}, Size: {}, Sort: {}", authorId, pageNumber, pageSize, sortField);
+        }
 
         userRepository.findById(authorId)
                 .orElseThrow(() -> {
@@ -104,58 +158,177 @@ public class BooksServiceImpl implements BooksService {
                     return new EntityNotFoundException("Author not found");
                 });
 
-        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, Sort.by(sortField));
+        Sort sort = BooksRepository.AUTHOR_SORTS.resolve(sortField, DEFAULT_SORT, Sort.Direction.ASC);
+        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, sort);
         final Page<Book> entities = booksRepository.findAllByAuthorId(authorId, pageable);
 
-        logger.info("Fetched {} books for author ID: {}", entities.getContent().size(), authorId);
+        logger.debug("Fetched {} books for author ID: {}", entities.getContent().size(), authorId);
         return toPagingResult(entities);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public PagingResult<BookDto> getAllBooksAfter(String after, int pageSize, String sortField) {
+        logger.debug("Fetching books after cursor - Size: {}, Sort: {}", pageSize, sortField);
+        Sort sort = BooksRepository.LISTING_SORTS.resolveKeyset(sortField, DEFAULT_SORT, Sort.Direction.ASC);
+        return toCursorResult(findSlice(Specification.where(null), after, pageSize, sort), sort);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PagingResult<BookDto> searchBooksAfter(String keyword, String after, int pageSize, String sortField) {
+        logger.debug("Searching books after cursor with keyword: '{}'", keyword);
+        //Only the jpql strategy's substring match is a criteria filter, the others would find other books than the pages
+        Specification<Book> filter = bookSearchStrategy.keysetFilter(keyword.trim());
+        if (filter == null) {
+            throw new IllegalArgumentException("Cursor paging of searches needs the jpql search strategy, page them with 'page' instead");
+        }
+        //Cursors hold a column value, ranked slices aren't offered
+        Sort sort = BooksRepository.SEARCH_SORTS.resolveKeyset(sortField, DEFAULT_SORT, Sort.Direction.ASC);
+        return toCursorResult(findSlice(filter, after, pageSize, sort), sort);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PagingResult<BookDto> getBooksByAuthorAfter(UUID authorId, String after, int pageSize, String sortField) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Fetching books after cursor for author ID: {} - Size: {}, Sort: {}", authorId, pageSize, sortField);
+        }
+
+        if (!userRepository.existsById(authorId)) {
+            logger.error("Author not found with ID: {}", authorId);
+            throw new EntityNotFoundException("Author not found");
+        }
+
+        Specification<Book> filter = BookSpecifications.hasAuthor(authorId);
+        Sort sort = BooksRepository.AUTHOR_SORTS.resolveKeyset(sortField, DEFAULT_SORT, Sort.Direction.ASC);
+        return toCursorResult(findSlice(filter, after, pageSize, sort), sort);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    //Not cached while the cover uploads: the upload's eviction could land before a concurrent read is cached
+    @Cacheable(cacheNames = CacheConfig.BOOKS_CACHE, key = "#id",
+            unless = "#result.coverImageStatus == T(com.engfred.bookstore.data.entities.CoverImageStatus).PENDING")
     public BookDto getBookById(UUID id) {
-        logger.info("Fetching book by ID: {}", id);
+        logger.debug("Fetching book by ID: {}", id);
 
-        return booksRepository.findById(id)
+        //Cached for every reader, a replica lagging behind the last update would keep the old book cached
+        return ReadYourWritesDataSource.onPrimary(() -> booksRepository.findById(id)
                 .map(bookMapper::toDto)
                 .orElseThrow(() -> {
                     logger.error("Book not found with ID: {}", id);
                     return new EntityNotFoundException("Book not found");
-                });
+                }));
     }
 
     @Override
-    public void deleteBook(UUID bookId) {
-        logger.info("Attempting to delete book with ID: {}", bookId);
-
-        Book book = booksRepository.findById(bookId)
+    public ResourceVersion getBookVersion(UUID id) {
+        BooksRepository.BookVersion version = booksRepository.findVersionById(id)
                 .orElseThrow(() -> {
-                    logger.error("Book not found with ID: {}", bookId);
+                    logger.error("Book not found with ID: {}", id);
                     return new EntityNotFoundException("Book not found");
                 });
+        //The book embeds its author, a change to either is a new version
+        return ResourceVersion.of(version.getVersion() + version.getAuthorVersion(),
+                version.getUpdatedAt(), version.getAuthorUpdatedAt());
+    }
 
-        if (!book.getAuthor().getEmail().equals(SecurityUtils.getCurrentUserEmail())) {
-            logger.error("Access denied for deleting book with ID: {} by user: {}", bookId, SecurityUtils.getCurrentUserEmail());
-            throw new AccessDeniedException("You are not allowed to delete this book!");
+    @Override
+    public ResourceVersion getAllBooksVersion() {
+        //Counted by the database on every book write and every write of an author with books
+        return ResourceVersion.of(catalogueVersionRepository.findCurrent());
+    }
+
+    @Override
+    @Transactional
+    @Scheduled(initialDelayString = "${bookstore.catalogue.compact-interval:1m}",
+            fixedDelayString = "${bookstore.catalogue.compact-interval:1m}")
+    public void compactCatalogueVersion() {
+        //Both statements commit together, readers see the changes either pending or folded, never both or neither
+        int changes = catalogueVersionRepository.deleteChanges();
+        if (changes > 0) {
+            catalogueVersionRepository.addChanges(changes);
         }
+    }
+
+    @Override
+    public ResourceVersion getBooksByAuthorVersion(UUID authorId) {
+        VersionSummary author = userRepository.summarizeVersionsById(authorId);
+        if (author.getCount() == 0) {
+            logger.error("Author not found with ID: {}", authorId);
+            throw new EntityNotFoundException("Author not found");
+        }
+        return ResourceVersion.of(booksRepository.summarizeVersionsByAuthorId(authorId), author);
+    }
+
+    //The lookup and the delete share one read-write transaction, on the primary: the cover released after the commit
+    //is the one the deleted row held. A cover the pipeline stored meanwhile fails the version check instead (409).
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.BOOKS_CACHE, key = "#bookId")
+    public void deleteBook(UUID bookId) {
+        logger.info("Attempting to delete book with ID: {}", bookId);
 
-        //Delete cover image from Cloudinary if it exists
+        Book book = transactionTemplate.execute(status -> {
+            Book found = booksRepository.findById(bookId)
+                    .orElseThrow(() -> {
+                        logger.error("Book not found with ID: {}", bookId);
+                        return new EntityNotFoundException("Book not found");
+                    });
+
+            if (!found.getAuthor().getEmail().equals(SecurityUtils.getCurrentUserEmail())) {
+                logger.error("Access denied for deleting book with ID: {} by user: {}", bookId, SecurityUtils.getCurrentUserEmail());
+                throw new AccessDeniedException("You are not allowed to delete this book!");
+            }
+
+            booksRepository.delete(found);
+            return found;
+        });
+
+        coverImagePipeline.cancel(bookId);
+
+        //Release the cover once the book is gone, Cloudinary only destroys it when no other book or user shares it
         if (book.getCoverImagePublicId() != null && !book.getCoverImagePublicId().isEmpty()) {
             try {
                 cloudinaryService.deleteImage(book.getCoverImagePublicId());
-                logger.info("Deleted book cover image from Cloudinary: {}", book.getCoverImagePublicId());
+                logger.info("Released book cover image: {}", book.getCoverImagePublicId());
             } catch (IOException e) {
                 logger.warn("Failed to delete image from Cloudinary for book ID: {}. Reason: {}", bookId, e.getMessage());
             }
         }
 
-        booksRepository.deleteById(bookId);
+        bookSearchStrategy.onBookDeleted(bookId);
+        pageResponseCache.evictAll();
         logger.info("Book deleted successfully with ID: {}", bookId);
     }
 
+    //The lookup and the write share one transaction: the book stays managed, dirty checking writes the changed columns
+    //and the version check fails a concurrent edit of the same book with a 409 instead of overwriting it.
+    //The caches, the search index and the cover upload only see the book once it is committed.
     @Override
+    @CacheEvict(cacheNames = CacheConfig.BOOKS_CACHE, key = "#bookId")
     public BookDto updateBook(UpdateBookRequest request, UUID bookId) throws IOException, AccessDeniedException {
         logger.info("Attempting to update book with ID: {}", bookId);
 
+        boolean hasCoverImage = request.getCoverImage() != null && !request.getCoverImage().isEmpty();
+        if (hasCoverImage) {
+            ImageFiles.requireSupportedImage(request.getCoverImage());
+        }
+
+        Book updatedBook = transactionTemplate.execute(status -> applyUpdate(request, bookId, hasCoverImage));
+
+        bookSearchStrategy.onBookSaved(updatedBook);
+        pageResponseCache.evictAll();
+        if (hasCoverImage) {
+            coverImagePipeline.submit(bookId, request.getCoverImage());
+        }
+        logger.info("Book updated successfully with ID: {}", bookId);
+
+        return bookMapper.toDto(updatedBook);
+    }
+
+    //Runs in the update transaction, the book is written at commit
+    private Book applyUpdate(UpdateBookRequest request, UUID bookId, boolean hasCoverImage) {
         Book book = booksRepository.findById(bookId)
                 .orElseThrow(() -> {
                     logger.error("Book not found with ID: {}", bookId);
@@ -167,36 +340,25 @@ public class BooksServiceImpl implements BooksService {
             throw new AccessDeniedException("You are not allowed to update this book!");
         }
 
-        logger.info("Updating book fields for book ID: {}", bookId);
+        logger.debug("Updating book fields for book ID: {}", bookId);
 
-        // Upload image if present
-        CloudinaryUploadResult uploadResult = null;
-        if (request.getCoverImage() != null && !request.getCoverImage().isEmpty()) {
-            uploadResult = cloudinaryService.uploadImage(request.getCoverImage(), ImageType.BOOK_COVER);
+        if (hasCoverImage) {
+            // The current cover stays until the new one is uploaded, it is then deleted from Cloudinary
+            Updates.setIfChanged(CoverImageStatus.PENDING, book.getCoverImageStatus(), book::setCoverImageStatus);
         }
 
-        book.setTitle(request.getTitle() != null && !request.getTitle().trim().equals(book.getTitle().trim()) ? request.getTitle().trim() : book.getTitle());
-        book.setDescription(request.getDescription() != null && !request.getDescription().trim().equals(book.getDescription().trim()) ? request.getDescription().trim() : book.getDescription());
-        book.setGenre(request.getGenre() != null && !request.getGenre().trim().equals(book.getGenre().trim()) ? request.getGenre().trim() : book.getGenre());
-        book.setPages(request.getPages() > 0 ? request.getPages() : book.getPages());
-        book.setPublishedAt(request.getPublishedAt() != null && !request.getPublishedAt().equals(book.getPublishedAt()) ? request.getPublishedAt() : book.getPublishedAt());
-        book.setIsbn(request.getIsbn() != null && !request.getIsbn().trim().equals(book.getIsbn().trim()) ? request.getIsbn().trim() : book.getIsbn());
-
-        if (uploadResult != null) {
-            book.setCoverImageUrl(uploadResult.imageUrl());
-            book.setCoverImagePublicId(uploadResult.publicId());
-        }
-
-        Book updatedBook = booksRepository.save(book);
-        logger.info("Book updated successfully with ID: {}", updatedBook.getId());
-
-        return bookMapper.toDto(updatedBook);
+        Updates.setIfChanged(request.getTitle(), book.getTitle(), book::setTitle);
+        Updates.setIfChanged(request.getDescription(), book.getDescription(), book::setDescription);
+        Updates.setIfChanged(request.getGenre(), book.getGenre(), book::setGenre);
+        Updates.setIfChanged(request.getPages() > 0 ? request.getPages() : null, book.getPages(), book::setPages);
+        Updates.setIfChanged(request.getPublishedAt(), book.getPublishedAt(), book::setPublishedAt);
+        Updates.setIfChanged(request.getIsbn(), book.getIsbn(), book::setIsbn);
+        return book;
     }
 
     private PagingResult<BookDto> toPagingResult(Page<Book> entities) {
-        logger.info("Mapping {} entities to DTOs", entities.getContent().size());
         final List<BookDto> entitiesDto = entities.stream().map(bookMapper::toDto).toList();
-        logger.info("Mapping complete");
+        logger.debug("Mapped {} entities to DTOs", entitiesDto.size());
         return new PagingResult<>(
                 entitiesDto,
                 entities.getTotalPages(),
@@ -206,4 +368,29 @@ public class BooksServiceImpl implements BooksService {
                 entities.isEmpty()
         );
     }
+
+    //The sort comes from SortWhitelist.resolveKeyset: one non-null field, a keyset predicate can't step over empty
+    //sort values, and the id tiebreaker that keeps the order total
+    private Slice<Book> findSlice(Specification<Book> filter, String after, int pageSize, Sort sort) {
+        Sort.Order order = sort.iterator().next();
+        Specification<Book> spec = filter;
+        if (after != null && !after.isBlank()) {
+            spec = spec.and(KeysetCursor.decode(after).requireSort(Book.class, order.getProperty(), order.getDirection()).toSpecification());
+        }
+        return booksRepository.findSlice(spec, sort, pageSize, "author");
+    }
+
+    private PagingResult<BookDto> toCursorResult(Slice<Book> slice, Sort sort) {
+        Sort.Order order = sort.iterator().next();
+        final List<BookDto> entitiesDto = slice.stream().map(bookMapper::toDto).toList();
+        String nextCursor = slice.hasNext()
+                ? KeysetCursor.after(slice.getContent().get(slice.getNumberOfElements() - 1), order.getProperty(), order.getDirection()).encode()
+                : null;
+        return PagingResult.<BookDto>builder()
+                .content(entitiesDto)
+                .size(slice.getSize())
+                .empty(slice.isEmpty())
+                .nextCursor(nextCursor)
+                .build();
+    }
 }
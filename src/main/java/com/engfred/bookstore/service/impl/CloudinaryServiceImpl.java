@@ -2,44 +2,109 @@ package com.engfred.bookstore.service.impl;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
+import com.engfred.bookstore.config.ReadYourWritesDataSource;
+import com.engfred.bookstore.data.entities.ImageAsset;
 import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.repository.ImageAssetRepository;
 import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
 import com.engfred.bookstore.service.CloudinaryService;
+import com.engfred.bookstore.utils.ImageFiles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
+/*
+ * Uploads are content addressed: an image whose bytes were already uploaded (for the same image type)
+ * reuses the stored copy and takes a reference on it, and deleteImage only destroys the remote copy
+ * when its last reference goes away. Images uploaded before the index existed are destroyed directly.
+ * Calls to Cloudinary are timed in bookstore.cloudinary.requests, failed ones also counted in bookstore.cloudinary.failures.
+ */
 @Service
 @RequiredArgsConstructor
 public class CloudinaryServiceImpl implements CloudinaryService {
 
+    private static final Logger logger = LoggerFactory.getLogger(CloudinaryServiceImpl.class);
+
     private final Cloudinary cloudinary;
+    private final ImageAssetRepository imageAssetRepository;
+    private final MeterRegistry meterRegistry;
 
     @Override
     public CloudinaryUploadResult uploadImage(MultipartFile file, ImageType imageType) throws IOException {
 
-        String contentType = file.getContentType();
+        ImageFiles.requireSupportedImage(file);
+
+        // The uploader only takes a File: a unique temp file (never the client's file name) removed once uploaded
+        Path upload = Files.createTempFile("upload-", ".img");
+        try {
+            ImageFiles.transfer(file, upload);
+            return uploadImage(upload, imageType);
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
 
-        // Allow only specific image content types
-        if (contentType == null ||
-                !(contentType.equals("image/jpeg") ||
-                        contentType.equals("image/png") ||
-                        contentType.equals("image/webp") ||
-                        contentType.equals("image/gif"))) {
-            throw new IllegalArgumentException("Invalid file type. Only image files (jpg, png, webp, gif) are allowed.");
+    @Override
+    public CloudinaryUploadResult uploadImage(Path image, ImageType imageType) throws IOException {
+        String contentHash = ImageFiles.sha256(image);
+        Optional<CloudinaryUploadResult> existing = reuse(contentHash, imageType);
+        if (existing.isPresent()) {
+            logger.info("Image already uploaded as {}, skipping the upload", existing.get().publicId());
+            return existing.get();
+        }
+
+        CloudinaryUploadResult uploaded = upload(image, imageType);
+        try {
+            imageAssetRepository.save(ImageAsset.builder()
+                    .contentHash(contentHash)
+                    .imageType(imageType)
+                    .publicId(uploaded.publicId())
+                    .imageUrl(uploaded.imageUrl())
+                    .referenceCount(1)
+                    .build());
+            return uploaded;
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent upload of the same image registered first: keep that copy and drop ours
+            destroy(uploaded.publicId());
+            return reuse(contentHash, imageType).orElseThrow(() -> e);
+        }
+    }
+
+    @Override
+    public void deleteImage(String publicId) throws IOException {
+        //On the primary: a replica that hasn't got the asset yet would have its remote copy destroyed under it
+        if (imageAssetRepository.release(publicId) == 0
+                && !ReadYourWritesDataSource.onPrimary(() -> imageAssetRepository.existsByPublicId(publicId))) {
+            // Uploaded before images were indexed, nothing else can reference it
+            destroy(publicId);
+            return;
+        }
+        if (imageAssetRepository.deleteUnreferenced(publicId) == 1) {
+            destroy(publicId);
         }
+    }
 
-        File convFile = new File(System.getProperty("java.io.tmpdir") + "/" + file.getOriginalFilename());
-        FileOutputStream fos = new FileOutputStream(convFile);
-        fos.write(file.getBytes());
-        fos.close();
+    //On the primary: right after a concurrent upload registered the image, a lagging replica wouldn't find it
+    private Optional<CloudinaryUploadResult> reuse(String contentHash, ImageType imageType) {
+        return ReadYourWritesDataSource.onPrimary(() -> imageAssetRepository.findByContentHashAndImageType(contentHash, imageType))
+                .filter(asset -> imageAssetRepository.acquire(asset.getId()) == 1)
+                .map(asset -> new CloudinaryUploadResult(asset.getImageUrl(), asset.getPublicId()));
+    }
 
+    private CloudinaryUploadResult upload(Path image, ImageType imageType) throws IOException {
         String publicId = UUID.randomUUID().toString();
         String uploadFolder = imageType == ImageType.BOOK_COVER ? "BookCovers" : "UserImages";
 
@@ -51,12 +116,40 @@ public class CloudinaryServiceImpl implements CloudinaryService {
         );
 
 
-        var imageUrl = cloudinary.uploader().upload(convFile, uploadParams).get("url");
+        var imageUrl = timed("upload", () -> cloudinary.uploader().upload(image.toFile(), uploadParams)).get("url");
         return new CloudinaryUploadResult(imageUrl.toString(), uploadFolder + "/" + publicId);
     }
 
-    @Override
-    public void deleteImage(String publicId) throws IOException {
-        cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
+    private void destroy(String publicId) throws IOException {
+        timed("destroy", () -> cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap()));
+    }
+
+    private Map<?, ?> timed(String operation, CloudinaryCall call) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return call.execute();
+        } catch (IOException | RuntimeException e) {
+            outcome = "failure";
+            Counter.builder("bookstore.cloudinary.failures")
+                    .description("Failed Cloudinary calls")
+                    .tag("operation", operation)
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("bookstore.cloudinary.requests")
+                    .description("Latency of Cloudinary calls")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    @FunctionalInterface
+    private interface CloudinaryCall {
+        Map<?, ?> execute() throws IOException;
     }
 }
@@ -0,0 +1,273 @@
+package com.engfred.bookstore.service.impl;
+
+import com.engfred.bookstore.config.CacheConfig;
+import com.engfred.bookstore.data.entities.CoverImageStatus;
+import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
+import com.engfred.bookstore.service.CloudinaryService;
+import com.engfred.bookstore.service.CoverImagePipeline;
+import com.engfred.bookstore.utils.ImageFiles;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Covers are copied to a local staging directory in the request thread, then uploaded by a fixed pool of workers
+ * so that a burst of uploads can't flood the image host. Failed uploads are retried with exponential backoff.
+ * The outcome only touches the book's cover columns and status, never fields the author may have changed meanwhile.
+ * Staged files are named after their book: uploads interrupted by a shutdown are resumed at the next start.
+ */
+@Service
+public class CoverImagePipelineImpl implements CoverImagePipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoverImagePipelineImpl.class);
+    private static final String STAGED_SUFFIX = ".cover";
+    private static final int UUID_LENGTH = 36;
+
+    private final BooksRepository booksRepository;
+    private final CloudinaryService cloudinaryService;
+    private final CacheManager cacheManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Path stagingDirectory;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final ThreadPoolExecutor workers;
+
+    //Latest staged cover of each book, an upload superseded by a newer cover or a deletion is thrown away
+    private final Map<UUID, Path> latestStaged = new ConcurrentHashMap<>();
+
+    public CoverImagePipelineImpl(BooksRepository booksRepository,
+                                  CloudinaryService cloudinaryService,
+                                  CacheManager cacheManager,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${bookstore.uploads.staging-dir:${java.io.tmpdir}/bookstore-uploads}") Path stagingDirectory,
+                                  @Value("${bookstore.uploads.workers:4}") int workers,
+                                  @Value("${bookstore.uploads.queue-capacity:100}") int queueCapacity,
+                                  @Value("${bookstore.uploads.max-attempts:4}") int maxAttempts,
+                                  @Value("${bookstore.uploads.initial-backoff:2s}") Duration initialBackoff,
+                                  @Value("${bookstore.uploads.max-backoff:30s}") Duration maxBackoff) {
+        this.booksRepository = booksRepository;
+        this.cloudinaryService = cloudinaryService;
+        this.cacheManager = cacheManager;
+        this.transactionTemplate = transactionTemplate;
+        this.stagingDirectory = stagingDirectory;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        //Not a bean: an Executor bean would replace Boot's applicationTaskExecutor used by @Async
+        this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("cover-upload-"));
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(stagingDirectory);
+    }
+
+    //Queued uploads stay staged on disk and are picked up by resumeStaged at the next start
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    @Override
+    public void submit(UUID bookId, MultipartFile coverImage) {
+        Path staged = stagingDirectory.resolve(bookId + "-" + UUID.randomUUID() + STAGED_SUFFIX);
+        try {
+            ImageFiles.transfer(coverImage, staged);
+        } catch (IOException e) {
+            logger.error("Failed to stage the cover image of book ID: {}", bookId, e);
+            deleteStaged(staged);
+            markFailed(bookId);
+            return;
+        }
+
+        //Inside a transaction, the PENDING book is only written at commit and would overwrite a faster upload
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        schedule(bookId, staged);
+                    } else {
+                        deleteStaged(staged);
+                    }
+                }
+            });
+        } else {
+            schedule(bookId, staged);
+        }
+    }
+
+    @Override
+    public void cancel(UUID bookId) {
+        latestStaged.remove(bookId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeStaged() throws IOException {
+        Map<UUID, Path> newestByBook = new HashMap<>();
+        try (Stream<Path> files = Files.list(stagingDirectory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(STAGED_SUFFIX))
+                    .sorted((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()))
+                    .forEach(file -> {
+                        Path older = newestByBook.put(bookIdOf(file), file);
+                        if (older != null) {
+                            deleteStaged(older);
+                        }
+                    });
+        }
+
+        newestByBook.forEach(this::schedule);
+        if (!newestByBook.isEmpty()) {
+            logger.info("Resumed {} staged cover uploads", newestByBook.size());
+        }
+    }
+
+    private void schedule(UUID bookId, Path staged) {
+        latestStaged.put(bookId, staged);
+        try {
+            workers.execute(() -> upload(bookId, staged));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Cover upload queue is full, dropping the cover of book ID: {}", bookId);
+            if (latestStaged.remove(bookId, staged)) {
+                markFailed(bookId);
+            }
+            deleteStaged(staged);
+        }
+    }
+
+    private void upload(UUID bookId, Path staged) {
+        boolean keepStaged = false;
+        try {
+            CloudinaryUploadResult result = uploadWithRetry(bookId, staged);
+            if (result != null) {
+                complete(bookId, staged, result);
+            } else if (latestStaged.remove(bookId, staged)) {
+                markFailed(bookId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            keepStaged = true;
+        } finally {
+            if (!keepStaged) {
+                deleteStaged(staged);
+            }
+        }
+    }
+
+    //Null when every attempt failed or when the upload is no longer wanted
+    private CloudinaryUploadResult uploadWithRetry(UUID bookId, Path staged) throws InterruptedException {
+        Duration backoff = initialBackoff;
+        for (int attempt = 1; isLatest(bookId, staged); attempt++) {
+            try {
+                return cloudinaryService.uploadImage(staged, ImageType.BOOK_COVER);
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    logger.error("Cover upload for book ID: {} failed after {} attempts", bookId, attempt, e);
+                    return null;
+                }
+                logger.warn("Cover upload for book ID: {} failed (attempt {}/{}), retrying in {} ms. Reason: {}",
+                        bookId, attempt, maxAttempts, backoff.toMillis(), e.getMessage());
+                Thread.sleep(backoff.toMillis());
+                Duration doubled = backoff.multipliedBy(2);
+                backoff = doubled.compareTo(maxBackoff) > 0 ? maxBackoff : doubled;
+            }
+        }
+        return null;
+    }
+
+    private void complete(UUID bookId, Path staged, CloudinaryUploadResult result) {
+        if (!latestStaged.remove(bookId, staged)) {
+            logger.info("Cover of book ID: {} was replaced or deleted during its upload, discarding it", bookId);
+            deleteUploaded(result.publicId());
+            return;
+        }
+
+        //Read and replaced in one transaction on the primary, under the row lock: the cover released below is the one
+        //the book held until now, a concurrent cover change or delete waits for the commit
+        CoverSwap swap = transactionTemplate.execute(status -> {
+            String previous = booksRepository.lockCoverImagePublicIdById(bookId).orElse(null);
+            int updated = booksRepository.updateCoverImage(bookId, result.imageUrl(), result.publicId(), CoverImageStatus.READY);
+            return new CoverSwap(updated == 1, previous);
+        });
+        if (!swap.updated()) {
+            logger.info("Book ID: {} was deleted during its cover upload, discarding it", bookId);
+            deleteUploaded(result.publicId());
+            return;
+        }
+        evictCachedBook(bookId);
+        logger.info("Cover image uploaded for book ID: {}", bookId);
+
+        if (swap.previousPublicId() != null && !swap.previousPublicId().isEmpty()) {
+            deleteUploaded(swap.previousPublicId());
+        }
+    }
+
+    private record CoverSwap(boolean updated, String previousPublicId) {
+    }
+
+    private boolean isLatest(UUID bookId, Path staged) {
+        return staged.equals(latestStaged.get(bookId));
+    }
+
+    private void markFailed(UUID bookId) {
+        booksRepository.updateCoverImageStatus(bookId, CoverImageStatus.FAILED);
+        evictCachedBook(bookId);
+    }
+
+    private void evictCachedBook(UUID bookId) {
+        Cache books = cacheManager.getCache(CacheConfig.BOOKS_CACHE);
+        if (books != null) {
+            books.evict(bookId);
+        }
+    }
+
+    private void deleteUploaded(String publicId) {
+        try {
+            cloudinaryService.deleteImage(publicId);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to delete image from Cloudinary: {}. Reason: {}", publicId, e.getMessage());
+        }
+    }
+
+    private static UUID bookIdOf(Path staged) {
+        return UUID.fromString(staged.getFileName().toString().substring(0, UUID_LENGTH));
+    }
+
+    private static void deleteStaged(Path staged) {
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            logger.warn("Failed to delete staged cover {}. Reason: {}", staged, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.engfred.bookstore.service.impl;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.service.BookSearchStrategy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ * PostgreSQL full-text search over the books.search_vector column (title, genre and author name).
+ * Every word is matched as a prefix, and a trigram-indexed substring match on title, genre and the author's
+ * names catches fragments from the middle of a word. Searches are ranked by relevance (ts_rank, then title similarity)
+ * unless the client sorts by a column, ts_rank then orders the books that sort leaves tied.
+ * The column, its triggers and indexes are created by the V5 and V6 migrations (db/migration).
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "bookstore.search.strategy", havingValue = "fulltext")
+public class FullTextBookSearchStrategy implements BookSearchStrategy {
+
+    private final BooksRepository booksRepository;
+
+    @Override
+    public boolean ranksByRelevance() {
+        return true;
+    }
+
+    @Override
+    public Page<Book> search(String keyword, Pageable pageable) {
+        String tsQuery = toPrefixTsQuery(keyword);
+        if (tsQuery.isEmpty()) {
+            //Nothing to rank on (blank or punctuation only), keep the plain query's behaviour, in id order when ranked
+            Pageable plain = pageable.getSort().getOrderFor(BooksRepository.RELEVANCE) != null
+                    ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by("id"))
+                    : pageable;
+            return booksRepository.searchBooks(keyword, plain);
+        }
+
+        String normalized = keyword.toLowerCase(Locale.ROOT);
+        Pageable ordered = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+                BooksRepository.fullTextOrder(pageable.getSort()));
+        Page<UUID> ids = booksRepository.searchIdsByFullText(tsQuery, toLikePattern(normalized), normalized, ordered);
+
+        //Hydrate only the page, authors included, then restore the order of the ids
+        Map<UUID, Book> books = booksRepository.findAllByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        List<Book> page = ids.getContent().stream()
+                .map(books::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+        return new PageImpl<>(page, pageable, ids.getTotalElements());
+    }
+
+    //"war pea" -> "war:* & pea:*"
+    static String toPrefixTsQuery(String keyword) {
+        return Arrays.stream(keyword.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(token -> !token.isEmpty())
+                .map(token -> token + ":*")
+                .collect(Collectors.joining(" & "));
+    }
+
+    private static String toLikePattern(String keyword) {
+        String escaped = keyword.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
@@ -0,0 +1,147 @@
+package com.engfred.bookstore.service.impl;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.service.BookSearchStrategy;
+import com.engfred.bookstore.utils.KeysetCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ * Resolves searches from a BookSearchIndex held in memory, only the returned page is read from the database.
+ * The index is built once the application is ready and kept current by the BooksService/UserService hooks.
+ * Until then, and for sorts the index can't order by, the JPQL query is used; both order text like the database.
+ */
+@Service
+@ConditionalOnProperty(name = "bookstore.search.strategy", havingValue = "index")
+public class InMemoryBookSearchStrategy implements BookSearchStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryBookSearchStrategy.class);
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private final BooksRepository booksRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private volatile BookSearchIndex index = new BookSearchIndex(BookSearchIndex.BINARY);
+    private volatile boolean ready;
+    //Writes made while a rebuild reads the catalogue, replayed on the rebuilt index before it replaces the current one.
+    //A slice read before a delete or an edit would otherwise put the book back as it was. Guarded by this.
+    private List<Consumer<BookSearchIndex>> writesDuringRebuild;
+
+    public InMemoryBookSearchStrategy(BooksRepository booksRepository, JdbcTemplate jdbcTemplate) {
+        this.booksRepository = booksRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //Walks the catalogue by id slices so that a large catalogue is never loaded at once
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            writesDuringRebuild = new ArrayList<>();
+        }
+        try {
+            BookSearchIndex rebuilt = new BookSearchIndex(BookSearchIndex.textSortKey(databaseCollation()));
+            KeysetCursor cursor = null;
+            Slice<Book> slice;
+            do {
+                Specification<Book> spec = cursor == null ? Specification.where(null) : cursor.toSpecification();
+                slice = booksRepository.findSlice(spec, Sort.by("id"), REBUILD_BATCH_SIZE, "author");
+                slice.forEach(book -> rebuilt.put(BookSearchIndex.Document.of(book)));
+                if (slice.hasNext()) {
+                    cursor = KeysetCursor.after(slice.getContent().get(slice.getNumberOfElements() - 1), "id", Sort.Direction.ASC);
+                }
+            } while (slice.hasNext());
+
+            synchronized (this) {
+                writesDuringRebuild.forEach(write -> write.accept(rebuilt));
+                index = rebuilt;
+                ready = true;
+            }
+        } finally {
+            synchronized (this) {
+                writesDuringRebuild = null;
+            }
+        }
+        logger.info("Book search index built with {} books in {} ms", index.size(), System.currentTimeMillis() - start);
+    }
+
+    //Null when the database isn't PostgreSQL, H2 compares text bytewise
+    private String databaseCollation() {
+        try {
+            return jdbcTemplate.queryForObject("SELECT datcollate FROM pg_database WHERE datname = current_database()", String.class);
+        } catch (DataAccessException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Page<Book> search(String keyword, Pageable pageable) {
+        BookSearchIndex.Hits hits = ready && BookSearchIndex.canOrder(pageable.getSort())
+                ? index.search(keyword, pageable.getSort(), pageable.getOffset(), pageable.getPageSize())
+                : null;
+        if (hits == null) {
+            return booksRepository.searchBooks(keyword, pageable);
+        }
+
+        //Hydrate only the page, authors included, in the index order
+        Map<UUID, Book> books = booksRepository.findAllByIdIn(hits.bookIds()).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        List<Book> page = hits.bookIds().stream()
+                .map(books::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+        return new PageImpl<>(page, pageable, hits.total());
+    }
+
+    @Override
+    public void onBookSaved(Book book) {
+        BookSearchIndex.Document document = BookSearchIndex.Document.of(book);
+        write(target -> target.put(document));
+    }
+
+    @Override
+    public void onBookDeleted(UUID bookId) {
+        write(target -> target.remove(bookId));
+    }
+
+    @Override
+    public void onAuthorUpdated(User author) {
+        String authorName = BookSearchIndex.Document.authorName(author);
+        write(target -> target.renameAuthor(author.getId(), authorName));
+    }
+
+    @Override
+    public void onAuthorDeleted(UUID authorId) {
+        write(target -> target.removeAuthor(authorId));
+    }
+
+    private synchronized void write(Consumer<BookSearchIndex> write) {
+        write.accept(index);
+        if (writesDuringRebuild != null) {
+            writesDuringRebuild.add(write);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.engfred.bookstore.service.impl;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.repository.BookSpecifications;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.service.BookSearchStrategy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+//Substring match over title, genre and author names. Works on any database but can't use an index.
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "bookstore.search.strategy", havingValue = "jpql", matchIfMissing = true)
+public class JpqlBookSearchStrategy implements BookSearchStrategy {
+
+    private final BooksRepository booksRepository;
+
+    @Override
+    public Page<Book> search(String keyword, Pageable pageable) {
+        return booksRepository.searchBooks(keyword, pageable);
+    }
+
+    @Override
+    public Specification<Book> keysetFilter(String keyword) {
+        return BookSpecifications.matchesKeyword(keyword);
+    }
+}
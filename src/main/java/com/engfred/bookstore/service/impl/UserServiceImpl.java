@@ -1,26 +1,44 @@
 package com.engfred.bookstore.service.impl;
 
+import com.engfred.bookstore.config.CacheConfig;
+import com.engfred.bookstore.config.PageResponseCache;
+import com.engfred.bookstore.config.PrincipalCache;
+import com.engfred.bookstore.config.ReadYourWritesDataSource;
 import com.engfred.bookstore.data.entities.ImageType;
 import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
 import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.data.repository.UserSpecifications;
 import com.engfred.bookstore.dto.models.UserDto;
 import com.engfred.bookstore.dto.request.UpdateUserRequest;
 import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
 import com.engfred.bookstore.dto.response.PagingResult;
 import com.engfred.bookstore.mappers.UserMapper;
+import com.engfred.bookstore.service.BookSearchStrategy;
 import com.engfred.bookstore.service.CloudinaryService;
 import com.engfred.bookstore.service.UserService;
+import com.engfred.bookstore.utils.KeysetCursor;
+import com.engfred.bookstore.utils.ResourceVersion;
 import com.engfred.bookstore.utils.SecurityUtils;
+import com.engfred.bookstore.utils.Updates;
+import io.micrometer.core.annotation.Timed;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.util.List;
@@ -28,21 +46,35 @@ import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
+@Timed("bookstore.service")
 public class UserServiceImpl implements UserService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserServiceImpl.class);
 
+    private static final String DEFAULT_SORT = "id";
+    private static final String DEFAULT_SEARCH_SORT = "firstname";
+
     private final UserRepository userRepository;
+    private final BooksRepository booksRepository;
     private final UserMapper userMapper;
     private final CloudinaryService cloudinaryService;
+    private final PrincipalCache principalCache;
+    private final BookSearchStrategy bookSearchStrategy;
+    private final CacheManager cacheManager;
+    private final PageResponseCache pageResponseCache;
+    private final TransactionTemplate transactionTemplate;
 
     @Override
-    public PagingResult<UserDto> getAllUsers(int pageNumber, int pageSize, String sortField) throws DataAccessException, IllegalArgumentException {
-        logger.info("Fetching all users with pageNumber: {}, pageSize: {}, sortField: {}", pageNumber, pageSize, sortField);
-        final Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, Sort.by(sortField));
+    @Transactional(readOnly = true)
+    public PagingResult<UserDto> getAllUsers(int pageNumber, int pageSize, String sortField, Sort.Direction direction) throws DataAccessException, IllegalArgumentException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Fetching all users with pageNumber: {}, pageSize: {}, sortField: {}, direction: {}", pageNumber, pageSize, sortField, direction);
+        }
+        final Sort sort = UserRepository.LISTING_SORTS.resolve(sortField, DEFAULT_SORT, direction);
+        final Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, sort);
         final Page<User> entities = userRepository.findAll(pageable);
         final List<UserDto> entitiesDto = entities.stream().map(userMapper::toDto).toList();
-        logger.info("Fetched {} users from database", entitiesDto.size());
+        logger.debug("Fetched {} users from database", entitiesDto.size());
         return new PagingResult<>(
                 entitiesDto,
                 entities.getTotalPages(),
@@ -54,15 +86,20 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public PagingResult<UserDto> searchAuthors(String keyword, int pageNumber, int pageSize, String sortField) {
-        logger.info("Searching users with keyword: '{}', pageNumber: {}, pageSize: {}, sortField: {}",
-                keyword, pageNumber, pageSize, sortField);
-        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, Sort.by(sortField));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Searching users with keyword: '{}', pageNumber: {}, pageSize: {}, sortField: {}",
+                    keyword, pageNumber, pageSize, sortField);
+        }
+        Sort sort = UserRepository.SEARCH_SORTS.resolve(sortField, DEFAULT_SEARCH_SORT, Sort.Direction.ASC);
+        Pageable pageable = PageRequest.of(pageNumber - 1, pageSize, sort);
 
-        Page<User> usersPage = userRepository.searchByKeyword(keyword, pageable);
+        //Trimmed like book search, surrounding blanks would only add trigrams that never match
+        Page<User> usersPage = userRepository.searchByKeyword(keyword.trim(), pageable);
         List<UserDto> usersDto = usersPage.stream().map(userMapper::toDto).toList();
 
-        logger.info("Found {} users matching keyword '{}'", usersDto.size(), keyword);
+        logger.debug("Found {} users matching keyword '{}'", usersDto.size(), keyword);
         return new PagingResult<>(
                 usersDto,
                 usersPage.getTotalPages(),
@@ -73,54 +110,93 @@ public class UserServiceImpl implements UserService {
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public PagingResult<UserDto> getAllUsersAfter(String after, int pageSize, String sortField, Sort.Direction direction) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Fetching users after cursor with pageSize: {}, sortField: {}, direction: {}", pageSize, sortField, direction);
+        }
+        Sort sort = UserRepository.LISTING_SORTS.resolveKeyset(sortField, DEFAULT_SORT, direction);
+        return toCursorResult(findSlice(Specification.where(null), after, pageSize, sort), sort);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PagingResult<UserDto> searchAuthorsAfter(String keyword, String after, int pageSize, String sortField) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Searching users after cursor with keyword: '{}', pageSize: {}, sortField: {}", keyword, pageSize, sortField);
+        }
+        Sort sort = UserRepository.SEARCH_SORTS.resolveKeyset(sortField, DEFAULT_SEARCH_SORT, Sort.Direction.ASC);
+        return toCursorResult(findSlice(UserSpecifications.matchesKeyword(keyword), after, pageSize, sort), sort);
+    }
 
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.AUTHORS_CACHE, key = "#userId")
     public UserDto getUserById(UUID userId) {
-        logger.info("Fetching user by ID: {}", userId);
-        User user = userRepository.findById(userId)
+        logger.debug("Fetching user by ID: {}", userId);
+        //Cached for every reader, a replica lagging behind the last update would keep the old profile cached
+        User user = ReadYourWritesDataSource.onPrimary(() -> userRepository.findById(userId))
                 .orElseThrow(() -> {
                     logger.error("User with ID: {} not found", userId);
                     return new EntityNotFoundException("User not found!");
                 });
-        logger.info("User with ID: {} found", userId);
+        logger.debug("User with ID: {} found", userId);
         return userMapper.toDto(user);
     }
 
     @Override
-    public void deleteUser() {
-        String currentUserEmail = SecurityUtils.getCurrentUserEmail();
-        logger.info("Attempting to delete user with email: {}", currentUserEmail);
-        User user = userRepository.findByEmail(currentUserEmail)
+    public ResourceVersion getUserVersion(UUID userId) {
+        UserRepository.UserVersion version = userRepository.findVersionById(userId)
                 .orElseThrow(() -> {
-                    logger.error("User with email: {} not found", currentUserEmail);
+                    logger.error("User with ID: {} not found", userId);
                     return new EntityNotFoundException("User not found!");
                 });
+        return ResourceVersion.of(version.getVersion(), version.getUpdatedAt());
+    }
 
-        //Delete profile image from Cloudinary if it exists
-        if (user.getProfileImagePublicId() != null && !user.getProfileImagePublicId().isEmpty()) {
-            try {
-                cloudinaryService.deleteImage(user.getProfileImagePublicId());
-                logger.info("Deleted book profile image from Cloudinary: {}", user.getProfileImagePublicId());
-            } catch (IOException e) {
-                logger.warn("Failed to delete image from Cloudinary for user ID: {}. Reason: {}", user.getId(), e.getMessage());
-            }
-        }
+    //The lookup, the reads of the books' ids and covers and the delete share one read-write transaction, on the
+    //primary: a lagging replica could miss the user or a cover stored since. The images are released, the caches
+    //evicted and the search index told once the delete is committed.
+    @Override
+    public void deleteUser() {
+        String currentUserEmail = SecurityUtils.getCurrentUserEmail();
+        logger.info("Attempting to delete user with email: {}", currentUserEmail);
+        DeletedUser deleted = transactionTemplate.execute(status -> {
+            User user = userRepository.findByEmail(currentUserEmail)
+                    .orElseThrow(() -> {
+                        logger.error("User with email: {} not found", currentUserEmail);
+                        return new EntityNotFoundException("User not found!");
+                    });
+
+            //Read before the cascade removes the books
+            List<UUID> bookIds = booksRepository.findIdsByAuthorId(user.getId());
+            List<String> coverImagePublicIds = booksRepository.findCoverImagePublicIdsByAuthorId(user.getId());
+            userRepository.delete(user);
+            return new DeletedUser(user, bookIds, coverImagePublicIds);
+        });
 
-        userRepository.deleteById(user.getId());
+        //Release the profile image and the books' covers, Cloudinary only destroys the ones nothing else references
+        User user = deleted.user();
+        releaseImage(user.getProfileImagePublicId(), currentUserEmail);
+        deleted.coverImagePublicIds().forEach(publicId -> releaseImage(publicId, currentUserEmail));
+        evictCachedAuthor(user.getId(), deleted.bookIds());
+        pageResponseCache.evictAll();
+        principalCache.evict(currentUserEmail);
+        bookSearchStrategy.onAuthorDeleted(user.getId());
         logger.info("User with email: {} and ID: {} successfully deleted", currentUserEmail, user.getId());
     }
 
+    private record DeletedUser(User user, List<UUID> bookIds, List<String> coverImagePublicIds) {
+    }
+
+    //The profile image is uploaded before the transaction, so a connection is only held for the lookup and the write
+    //of the changed columns. The version check fails a concurrent edit of the same user with a 409, which also
+    //releases the image uploaded for it.
     @Override
     public UserDto updateUser(UpdateUserRequest request) throws IOException {
         String currentUserEmail = SecurityUtils.getCurrentUserEmail();
         logger.info("Attempting to update user with email: {}", currentUserEmail);
-        User user = userRepository.findByEmail(currentUserEmail)
-                .orElseThrow(() -> {
-                    logger.error("User with email: {} not found", currentUserEmail);
-                    return new EntityNotFoundException("User not found!");
-                });
-
-        logger.info("Updating fields for user with email: {}", currentUserEmail);
 
         // Upload image if present
         CloudinaryUploadResult uploadResult = null;
@@ -128,20 +204,102 @@ public class UserServiceImpl implements UserService {
             uploadResult = cloudinaryService.uploadImage(request.getProfileImage(), ImageType.USER_IMAGE);
         }
 
-        user.setFirstname(request.getFirstname() != null && !request.getFirstname().trim().equals(user.getFirstname().trim()) ? request.getFirstname().trim() : user.getFirstname());
-        user.setLastname(request.getLastname() != null && !request.getLastname().trim().equals(user.getLastname().trim()) ? request.getLastname().trim() : user.getLastname());
-        user.setPhoneNumber(request.getPhoneNumber() != null && !request.getPhoneNumber().trim().equals(user.getPhoneNumber().trim()) ? request.getPhoneNumber().trim() : user.getPhoneNumber());
-        user.setAddress(request.getAddress() != null && !request.getAddress().trim().equals(user.getAddress().trim()) ? request.getAddress().trim() : user.getAddress());
-        user.setBio(request.getBio() != null && !request.getBio().trim().equals(user.getBio().trim()) ? request.getBio().trim() : user.getBio());
-        user.setGender(request.getGender() != null && !request.getGender().toString().trim().equals(user.getGender().toString().trim()) ? request.getGender() : user.getGender());
+        ProfileUpdate update;
+        try {
+            CloudinaryUploadResult uploaded = uploadResult;
+            update = transactionTemplate.execute(status -> applyUpdate(request, currentUserEmail, uploaded));
+        } catch (RuntimeException e) {
+            if (uploadResult != null) {
+                releaseImage(uploadResult.publicId(), currentUserEmail);
+            }
+            throw e;
+        }
+
+        User updatedUser = update.user();
+        releaseImage(update.replacedImagePublicId(), currentUserEmail);
+        evictCachedAuthor(updatedUser.getId(), booksRepository.findIdsByAuthorId(updatedUser.getId()));
+        pageResponseCache.evictAll();
+        principalCache.evict(currentUserEmail);
+        bookSearchStrategy.onAuthorUpdated(updatedUser);
+        logger.info("User with email: {} successfully updated", currentUserEmail);
+        return userMapper.toDto(updatedUser);
+    }
+
+    //Runs in the update transaction, the user stays managed and is written at commit
+    private ProfileUpdate applyUpdate(UpdateUserRequest request, String currentUserEmail, CloudinaryUploadResult uploadResult) {
+        User user = userRepository.findByEmail(currentUserEmail)
+                .orElseThrow(() -> {
+                    logger.error("User with email: {} not found", currentUserEmail);
+                    return new EntityNotFoundException("User not found!");
+                });
+
+        logger.debug("Updating fields for user with email: {}", currentUserEmail);
 
+        Updates.setIfChanged(request.getFirstname(), user.getFirstname(), user::setFirstname);
+        Updates.setIfChanged(request.getLastname(), user.getLastname(), user::setLastname);
+        Updates.setIfChanged(request.getPhoneNumber(), user.getPhoneNumber(), user::setPhoneNumber);
+        Updates.setIfChanged(request.getAddress(), user.getAddress(), user::setAddress);
+        Updates.setIfChanged(request.getBio(), user.getBio(), user::setBio);
+        Updates.setIfChanged(request.getGender(), user.getGender(), user::setGender);
+
+        String replacedImagePublicId = null;
         if (uploadResult != null) {
+            replacedImagePublicId = user.getProfileImagePublicId();
             user.setImageUrl(uploadResult.imageUrl());
             user.setProfileImagePublicId(uploadResult.publicId());
         }
+        return new ProfileUpdate(user, replacedImagePublicId);
+    }
 
-        User updatedUser = userRepository.save(user);
-        logger.info("User with email: {} successfully updated", currentUserEmail);
-        return userMapper.toDto(updatedUser);
+    private record ProfileUpdate(User user, String replacedImagePublicId) {
+    }
+
+    private void releaseImage(String publicId, String email) {
+        if (publicId == null || publicId.isEmpty()) {
+            return;
+        }
+        try {
+            cloudinaryService.deleteImage(publicId);
+            logger.info("Released image {} of user with email: {}", publicId, email);
+        } catch (IOException e) {
+            logger.warn("Failed to delete image from Cloudinary for user with email: {}. Reason: {}", email, e.getMessage());
+        }
+    }
+
+    //The sort comes from SortWhitelist.resolveKeyset: one non-null field, a keyset predicate can't step over empty
+    //sort values, and the id tiebreaker that keeps the order total
+    private Slice<User> findSlice(Specification<User> filter, String after, int pageSize, Sort sort) {
+        Sort.Order order = sort.iterator().next();
+        Specification<User> spec = filter;
+        if (after != null && !after.isBlank()) {
+            spec = spec.and(KeysetCursor.decode(after).requireSort(User.class, order.getProperty(), order.getDirection()).toSpecification());
+        }
+        return userRepository.findSlice(spec, sort, pageSize);
+    }
+
+    private PagingResult<UserDto> toCursorResult(Slice<User> slice, Sort sort) {
+        Sort.Order order = sort.iterator().next();
+        List<UserDto> usersDto = slice.stream().map(userMapper::toDto).toList();
+        String nextCursor = slice.hasNext()
+                ? KeysetCursor.after(slice.getContent().get(slice.getNumberOfElements() - 1), order.getProperty(), order.getDirection()).encode()
+                : null;
+        return PagingResult.<UserDto>builder()
+                .content(usersDto)
+                .size(slice.getSize())
+                .empty(slice.isEmpty())
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    //Cached BookDto entries embed their author, so they go together with the author's own entry
+    private void evictCachedAuthor(UUID authorId, List<UUID> bookIds) {
+        Cache authors = cacheManager.getCache(CacheConfig.AUTHORS_CACHE);
+        if (authors != null) {
+            authors.evict(authorId);
+        }
+        Cache books = cacheManager.getCache(CacheConfig.BOOKS_CACHE);
+        if (books != null) {
+            bookIds.forEach(books::evict);
+        }
     }
 }
@@ -0,0 +1,92 @@
+package com.engfred.bookstore.utils;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+public final class ImageFiles {
+
+    private static final int HEADER_LENGTH = 12;
+    private static final int DIGEST_BUFFER_SIZE = 16 * 1024;
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF87A = "GIF87a".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GIF89A = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RIFF = "RIFF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WEBP = "WEBP".getBytes(StandardCharsets.US_ASCII);
+
+    private ImageFiles() {
+    }
+
+    //Checked in the request thread, before anything is stored or uploaded.
+    //The type is read from the file's first bytes, the Content-Type header is whatever the client claims.
+    public static void requireSupportedImage(MultipartFile file) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH];
+        int length;
+        try (InputStream in = file.getInputStream()) {
+            length = in.readNBytes(header, 0, HEADER_LENGTH);
+        }
+        if (detectContentType(header, length) == null) {
+            throw new IllegalArgumentException("Invalid file type. Only image files (jpg, png, webp, gif) are allowed.");
+        }
+    }
+
+    //Moves the upload to target. Tomcat spools parts to disk (file-size-threshold=0), and transferTo(File) lets it
+    //rename that file into place, where transferTo(Path) or getBytes() would copy it through the heap.
+    public static void transfer(MultipartFile file, Path target) throws IOException {
+        file.transferTo(target.toFile());
+    }
+
+    //Hex encoded SHA-256 of the file, read through one small buffer whatever the image size.
+    //A pass of its own rather than a digest taken while writing the file: transfer renames the spooled part into
+    //place, so this is the only read of the upload. Digesting on the way would turn that rename into a full copy.
+    public static String sha256(Path image) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static String detectContentType(byte[] header, int length) {
+        if (startsWith(header, length, 0, JPEG)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, length, 0, PNG)) {
+            return "image/png";
+        }
+        if (startsWith(header, length, 0, GIF87A) || startsWith(header, length, 0, GIF89A)) {
+            return "image/gif";
+        }
+        if (startsWith(header, length, 0, RIFF) && startsWith(header, length, 8, WEBP)) {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, byte[] signature) {
+        return length >= offset + signature.length
+                && Arrays.equals(header, offset, offset + signature.length, signature, 0, signature.length);
+    }
+}
@@ -0,0 +1,107 @@
+package com.engfred.bookstore.utils;
+
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/*
+ * Position of the last row of a keyset page: the sort key and the id used as tiebreaker.
+ * Clients only ever see it as an opaque, URL-safe token passed back through the "after" parameter.
+ */
+public record KeysetCursor(String sortField, Sort.Direction direction, String sortValue, UUID id) {
+
+    private static final String SEPARATOR = "\n";
+
+    //Builds the cursor pointing right after the given entity
+    public static KeysetCursor after(Object entity, String sortField, Sort.Direction direction) {
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(entity);
+        Object value = wrapper.getPropertyValue(sortField);
+        if (value == null) {
+            throw new IllegalArgumentException("Cursor paging is not supported on empty '" + sortField + "' values");
+        }
+        return new KeysetCursor(sortField, direction, format(value), (UUID) wrapper.getPropertyValue("id"));
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            //The sort value goes last since it is free text
+            String[] parts = decoded.split(SEPARATOR, 4);
+            return new KeysetCursor(parts[0], Sort.Direction.fromString(parts[1]), parts[3], UUID.fromString(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        String raw = sortField + SEPARATOR + direction.name() + SEPARATOR + id + SEPARATOR + sortValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //Rejects cursors issued for another ordering, they would silently skip or repeat rows, and values the entity's
+    //field can't take: once in the query, the error would no longer be the client's
+    public KeysetCursor requireSort(Class<?> entityType, String expectedField, Sort.Direction expectedDirection) {
+        if (!sortField.equals(expectedField) || direction != expectedDirection) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort");
+        }
+        try {
+            parse(sortValue, BeanUtils.findPropertyType(sortField, entityType));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return this;
+    }
+
+    //(sortField, id) > (value, id) for ascending order, < for descending
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public <T> Specification<T> toSpecification() {
+        return (root, query, cb) -> {
+            Path<Comparable> field = root.get(sortField);
+            Path<UUID> idPath = root.get("id");
+            Comparable value = parse(sortValue, field.getJavaType());
+
+            Predicate after = direction.isAscending()
+                    ? cb.greaterThan(field, value)
+                    : cb.lessThan(field, value);
+            Predicate tie = cb.and(
+                    cb.equal(field, value),
+                    direction.isAscending() ? cb.greaterThan(idPath, id) : cb.lessThan(idPath, id));
+            return cb.or(after, tie);
+        };
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Date date) {
+            //Timestamp.toInstant keeps the sub-millisecond part stored by the database
+            return date.toInstant().toString();
+        }
+        return value.toString();
+    }
+
+    private static Comparable<?> parse(String value, Class<?> type) {
+        if (Date.class.isAssignableFrom(type)) {
+            return Timestamp.from(Instant.parse(value));
+        }
+        if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(value);
+        }
+        if (type == Long.class || type == long.class) {
+            return Long.valueOf(value);
+        }
+        if (type == UUID.class) {
+            return UUID.fromString(value);
+        }
+        return value;
+    }
+}
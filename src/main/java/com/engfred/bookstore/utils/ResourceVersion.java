@@ -0,0 +1,53 @@
+package com.engfred.bookstore.utils;
+
+import com.engfred.bookstore.data.repository.VersionSummary;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.Date;
+import java.util.StringJoiner;
+
+/*
+ * Strong ETag (and Last-Modified when known) of a representation, computed from version columns only.
+ * Controllers check it before building the body, so a matching If-None-Match/If-Modified-Since costs one small query.
+ */
+public record ResourceVersion(String etag, long lastModified) {
+
+    private static final long UNKNOWN = -1;
+
+    //A counter, or a single row and the rows embedded in its representation: their versions only ever grow
+    public static ResourceVersion of(long versionSum, Date... modifiedAt) {
+        long lastModified = UNKNOWN;
+        for (Date date : modifiedAt) {
+            if (date != null) {
+                lastModified = Math.max(lastModified, date.getTime());
+            }
+        }
+        return new ResourceVersion("\"" + versionSum + "\"", lastModified);
+    }
+
+    //A page of rows. No Last-Modified: a deleted row doesn't move the latest timestamp, only the ETag sees it.
+    public static ResourceVersion of(VersionSummary... summaries) {
+        StringJoiner etag = new StringJoiner("-", "\"", "\"");
+        for (VersionSummary summary : summaries) {
+            Date lastModified = summary.getLastModified();
+            etag.add(Long.toString(summary.getCount(), 36))
+                    .add(Long.toString(summary.getVersionSum(), 36))
+                    .add(Long.toString(lastModified != null ? lastModified.getTime() : 0, 36));
+        }
+        return new ResourceVersion(etag.toString(), UNKNOWN);
+    }
+
+    //True when the client's copy is current, the 304 and its headers are then already set on the response
+    public boolean isNotModified(WebRequest request) {
+        return request.checkNotModified(etag, lastModified);
+    }
+
+    public <T> ResponseEntity<T> ok(T body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag);
+        if (lastModified != UNKNOWN) {
+            response.lastModified(lastModified);
+        }
+        return response.body(body);
+    }
+}
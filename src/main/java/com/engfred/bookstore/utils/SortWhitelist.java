@@ -0,0 +1,101 @@
+package com.engfred.bookstore.utils;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * The sorts a paged endpoint accepts. Clients send comma-separated entity fields, each optionally followed by ":asc"
+ * or ":desc" (sort=genre,title:desc), a field without one takes the endpoint's default direction.
+ * Only the orderings listed here are accepted: each is served by an index, which the database reads in order
+ * (or backwards, hence one direction per sort) instead of sorting the table. The id tiebreaker is always appended,
+ * so rows sharing a value keep their place from one page to the next.
+ */
+public final class SortWhitelist {
+
+    private static final String ID = "id";
+
+    private final Set<String> fields;
+    //Field sequences an index returns in order, without the id tiebreaker
+    private final Set<List<String>> orderings;
+
+    private SortWhitelist(Set<String> fields, Set<List<String>> orderings) {
+        this.fields = fields;
+        this.orderings = orderings;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    //The sort to page with, id tiebreaker included. Null or blank asks for the default sort.
+    public Sort resolve(String sort, String defaultSort, Sort.Direction defaultDirection) {
+        List<Sort.Order> orders = parse(sort == null || sort.isBlank() ? defaultSort : sort, defaultDirection);
+        Sort.Direction direction = orders.get(0).getDirection();
+        if (orders.stream().anyMatch(order -> order.getDirection() != direction)) {
+            throw new IllegalArgumentException("Sort fields must share one direction, mixed directions can't be read from an index");
+        }
+
+        //A trailing id is the tiebreaker the sort gets anyway
+        if (orders.size() > 1 && orders.get(orders.size() - 1).getProperty().equals(ID)) {
+            orders = orders.subList(0, orders.size() - 1);
+        }
+        List<String> properties = orders.stream().map(Sort.Order::getProperty).toList();
+        if (properties.equals(List.of(ID))) {
+            return Sort.by(orders);
+        }
+        if (!orderings.contains(properties)) {
+            throw new IllegalArgumentException("Sorting by " + String.join(", ", properties) + " together is not supported, no index serves it");
+        }
+        return Sort.by(orders).and(Sort.by(direction, ID));
+    }
+
+    //Cursor paging: a single field and the tiebreaker, the cursor holds the value of both (see KeysetCursor)
+    public Sort resolveKeyset(String sort, String defaultSort, Sort.Direction defaultDirection) {
+        Sort resolved = resolve(sort, defaultSort, defaultDirection);
+        if (resolved.toList().size() > 2) {
+            throw new IllegalArgumentException("Cursor paging supports a single sort field");
+        }
+        return resolved;
+    }
+
+    private List<Sort.Order> parse(String sort, Sort.Direction defaultDirection) {
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String part : sort.split(",")) {
+            String[] fieldAndDirection = part.split(":", 2);
+            String field = fieldAndDirection[0].trim();
+            if (!fields.contains(field)) {
+                throw new IllegalArgumentException("Sorting by '" + field + "' is not supported, sortable fields: " + String.join(", ", fields));
+            }
+            Sort.Direction direction = fieldAndDirection.length > 1
+                    ? Sort.Direction.fromString(fieldAndDirection[1].trim())
+                    : defaultDirection;
+            orders.add(new Sort.Order(direction, field));
+        }
+        return orders;
+    }
+
+    public static final class Builder {
+
+        private final Set<String> fields = new LinkedHashSet<>(List.of(ID));
+        private final List<List<String>> orderings = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        //Fields, in order, of an index serving the sort (with the id tiebreaker as its last column)
+        public Builder ordering(String... fields) {
+            this.fields.addAll(List.of(fields));
+            orderings.add(List.of(fields));
+            return this;
+        }
+
+        public SortWhitelist build() {
+            return new SortWhitelist(Collections.unmodifiableSet(new LinkedHashSet<>(fields)), Set.copyOf(orderings));
+        }
+    }
+}
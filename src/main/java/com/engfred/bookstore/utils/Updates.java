@@ -0,0 +1,31 @@
+package com.engfred.bookstore.utils;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/*
+ * Partial updates of a managed entity: a value the request leaves out (null) or repeats is never set, so the entity
+ * stays clean unless something actually changed, and with @DynamicUpdate only the changed columns are written.
+ */
+public final class Updates {
+
+    private Updates() {
+    }
+
+    //Compared and stored trimmed
+    public static void setIfChanged(String requested, String current, Consumer<String> setter) {
+        if (requested == null) {
+            return;
+        }
+        String trimmed = requested.trim();
+        if (current == null || !trimmed.equals(current.trim())) {
+            setter.accept(trimmed);
+        }
+    }
+
+    public static <T> void setIfChanged(T requested, T current, Consumer<T> setter) {
+        if (requested != null && !Objects.equals(requested, current)) {
+            setter.accept(requested);
+        }
+    }
+}
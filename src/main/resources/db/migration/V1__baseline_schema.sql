@@ -0,0 +1,31 @@
+-- Schema as Hibernate created it (ddl-auto=update) before migrations were introduced.
+-- Databases that already have these tables are baselined at this version and skip it (spring.flyway.baseline-*).
+
+CREATE TABLE users (
+    id                      uuid         NOT NULL PRIMARY KEY,
+    firstname               varchar(100) NOT NULL,
+    lastname                varchar(100),
+    email                   varchar(100) NOT NULL CONSTRAINT uk_users_email UNIQUE,
+    phone_number            varchar(255) NOT NULL,
+    address                 varchar(200) NOT NULL,
+    bio                     varchar(500),
+    password                varchar(255) NOT NULL,
+    image_url               varchar(255),
+    profile_image_public_id varchar(255),
+    gender                  varchar(255) CHECK (gender IN ('MALE', 'FEMALE', 'PREFER_NOT_TO_SAY')),
+    created_at              timestamp(6)
+);
+
+CREATE TABLE books (
+    id                    uuid          NOT NULL PRIMARY KEY,
+    title                 varchar(300)  NOT NULL,
+    description           varchar(1000),
+    genre                 varchar(255)  NOT NULL,
+    pages                 integer       NOT NULL,
+    published_at          timestamp(6)  NOT NULL,
+    isbn                  varchar(255)  NOT NULL,
+    cover_image_url       varchar(255),
+    cover_image_public_id varchar(255),
+    created_at            timestamp(6),
+    author_id             uuid          NOT NULL CONSTRAINT fk_books_author REFERENCES users (id)
+);
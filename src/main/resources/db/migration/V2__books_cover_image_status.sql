@@ -0,0 +1,7 @@
+-- Background cover uploads (CoverImagePipeline). Idempotent: ddl-auto may already have added the column.
+
+ALTER TABLE books ADD COLUMN IF NOT EXISTS cover_image_status varchar(16) NOT NULL DEFAULT 'NONE'
+    CHECK (cover_image_status IN ('NONE', 'PENDING', 'READY', 'FAILED'));
+
+-- Covers uploaded before the pipeline existed are already in place
+UPDATE books SET cover_image_status = 'READY' WHERE cover_image_status = 'NONE' AND cover_image_url IS NOT NULL;
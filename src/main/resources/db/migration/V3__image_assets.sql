@@ -0,0 +1,12 @@
+-- Uploaded images deduplicated by content hash, see ImageAsset. Idempotent: ddl-auto may already have created it.
+
+CREATE TABLE IF NOT EXISTS image_assets (
+    id              uuid         NOT NULL PRIMARY KEY,
+    content_hash    varchar(64)  NOT NULL,
+    image_type      varchar(16)  NOT NULL CHECK (image_type IN ('BOOK_COVER', 'USER_IMAGE')),
+    public_id       varchar(255) NOT NULL UNIQUE,
+    image_url       varchar(255) NOT NULL,
+    reference_count integer      NOT NULL,
+    created_at      timestamp(6),
+    CONSTRAINT uk_image_assets_content_hash_image_type UNIQUE (content_hash, image_type)
+);
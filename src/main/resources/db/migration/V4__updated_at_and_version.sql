@@ -0,0 +1,10 @@
+-- Last-Modified and optimistic locking (ETags). Idempotent: ddl-auto may already have added the columns.
+
+ALTER TABLE books ADD COLUMN IF NOT EXISTS updated_at timestamp(6);
+ALTER TABLE books ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS updated_at timestamp(6);
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+
+-- Rows written before the column existed were last modified when they were created
+UPDATE books SET updated_at = created_at WHERE updated_at IS NULL;
+UPDATE users SET updated_at = created_at WHERE updated_at IS NULL;
@@ -0,0 +1,44 @@
+-- Full-text search over books (title, genre and the author's name), used by FullTextBookSearchStrategy.
+-- Idempotent, the script was run at every startup before migrations were introduced.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE books ADD COLUMN IF NOT EXISTS search_vector tsvector;
+
+CREATE OR REPLACE FUNCTION books_search_vector_refresh() RETURNS trigger AS $$
+BEGIN
+    NEW.search_vector :=
+        setweight(to_tsvector('simple', coalesce(NEW.title, '')), 'A') ||
+        setweight(to_tsvector('simple', coalesce(NEW.genre, '')), 'B') ||
+        setweight(to_tsvector('simple', coalesce(
+            (SELECT concat_ws(' ', u.firstname, u.lastname) FROM users u WHERE u.id = NEW.author_id), '')), 'C');
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS books_search_vector_trigger ON books;
+CREATE TRIGGER books_search_vector_trigger
+    BEFORE INSERT OR UPDATE OF title, genre, author_id ON books
+    FOR EACH ROW EXECUTE FUNCTION books_search_vector_refresh();
+
+-- Renaming an author re-indexes their books
+CREATE OR REPLACE FUNCTION users_books_search_vector_refresh() RETURNS trigger AS $$
+BEGIN
+    UPDATE books SET author_id = author_id WHERE author_id = NEW.id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_books_search_vector_trigger ON users;
+CREATE TRIGGER users_books_search_vector_trigger
+    AFTER UPDATE OF firstname, lastname ON users
+    FOR EACH ROW
+    WHEN (OLD.firstname IS DISTINCT FROM NEW.firstname OR OLD.lastname IS DISTINCT FROM NEW.lastname)
+    EXECUTE FUNCTION users_books_search_vector_refresh();
+
+-- Backfill rows written before the trigger existed
+UPDATE books SET author_id = author_id WHERE search_vector IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_books_search_vector ON books USING GIN (search_vector);
+CREATE INDEX IF NOT EXISTS idx_books_title_trgm ON books USING GIN (lower(title) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_books_genre_trgm ON books USING GIN (lower(genre) gin_trgm_ops);
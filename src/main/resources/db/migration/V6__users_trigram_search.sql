@@ -0,0 +1,10 @@
+-- Trigram indexes behind UserRepository.searchByKeyword (/authors/search).
+-- The query compares lower(column) LIKE '%keyword%'; a GIN gin_trgm_ops index on the same lower(column)
+-- expression lets PostgreSQL answer it with a bitmap index scan instead of reading the whole table.
+-- Idempotent, the script was run at every startup before migrations were introduced.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_users_firstname_trgm ON users USING GIN (lower(firstname) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_lastname_trgm ON users USING GIN (lower(lastname) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_email_trgm ON users USING GIN (lower(email) gin_trgm_ops);
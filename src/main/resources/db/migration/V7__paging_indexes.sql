@@ -0,0 +1,17 @@
+-- Sorted paging. Page and cursor mode both order by (sort column, id), so each index serves the ORDER BY,
+-- the keyset predicate and the LIMIT without sorting the table.
+CREATE INDEX IF NOT EXISTS idx_books_title_id ON books (title, id);
+CREATE INDEX IF NOT EXISTS idx_books_genre_id ON books (genre, id);
+CREATE INDEX IF NOT EXISTS idx_books_created_at_id ON books (created_at, id);
+CREATE INDEX IF NOT EXISTS idx_books_published_at_id ON books (published_at, id);
+
+-- An author's books (GET /books/author/{id}). The author_id prefix also serves every other lookup by author:
+-- ids and cover ids on delete, version summaries, the foreign key check and the search vector trigger.
+CREATE INDEX IF NOT EXISTS idx_books_author_id_title_id ON books (author_id, title, id);
+CREATE INDEX IF NOT EXISTS idx_books_author_id_created_at_id ON books (author_id, created_at, id);
+
+-- Incremental export (BooksRepository.streamUpdatedSince), same expression as the query
+CREATE INDEX IF NOT EXISTS idx_books_last_modified ON books ((coalesce(updated_at, created_at)));
+
+CREATE INDEX IF NOT EXISTS idx_users_firstname_id ON users (firstname, id);
+CREATE INDEX IF NOT EXISTS idx_users_created_at_id ON users (created_at, id);
@@ -0,0 +1,47 @@
+-- Version of the whole catalogue (GET /books), the ETag of its pages: the number of writes that changed what a book
+-- listing shows. Triggers catch every writer: the services, the cover pipeline's column updates, imports and other instances.
+-- Each write appends a row to catalogue_changes rather than updating a shared counter, so writers never wait on each
+-- other. The row commits with the write it counts, a reader sees both or neither, on the primary as on a replica.
+-- The version is catalogue_version.version plus the rows not folded into it yet (BooksService.compactCatalogueVersion).
+
+CREATE TABLE IF NOT EXISTS catalogue_version (
+    id      integer PRIMARY KEY CHECK (id = 1),
+    version bigint  NOT NULL
+);
+
+INSERT INTO catalogue_version (id, version) VALUES (1, 0) ON CONFLICT (id) DO NOTHING;
+
+CREATE TABLE IF NOT EXISTS catalogue_changes (
+    id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY
+);
+
+CREATE OR REPLACE FUNCTION catalogue_version_bump() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO catalogue_changes DEFAULT VALUES;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+-- Once per statement, a chunk of imported books is one change
+DROP TRIGGER IF EXISTS books_catalogue_version_trigger ON books;
+CREATE TRIGGER books_catalogue_version_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON books
+    FOR EACH STATEMENT EXECUTE FUNCTION catalogue_version_bump();
+
+-- Book listings embed their author, only the writes of authors who have books change them.
+-- Deleting an author deletes their books first, the books trigger covers it.
+CREATE OR REPLACE FUNCTION users_catalogue_version_bump() RETURNS trigger AS $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM books WHERE author_id = NEW.id) THEN
+        INSERT INTO catalogue_changes DEFAULT VALUES;
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_catalogue_version_trigger ON users;
+CREATE TRIGGER users_catalogue_version_trigger
+    AFTER UPDATE ON users
+    FOR EACH ROW
+    WHEN (OLD.* IS DISTINCT FROM NEW.*)
+    EXECUTE FUNCTION users_catalogue_version_bump();
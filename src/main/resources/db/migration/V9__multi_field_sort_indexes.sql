@@ -0,0 +1,4 @@
+-- Two-field sorts offered by the listings (BooksRepository.LISTING_SORTS, UserRepository.LISTING_SORTS),
+-- read from the index in either direction like the single-field ones of V7.
+CREATE INDEX IF NOT EXISTS idx_books_genre_title_id ON books (genre, title, id);
+CREATE INDEX IF NOT EXISTS idx_users_lastname_firstname_id ON users (lastname, firstname, id);
@@ -0,0 +1,53 @@
+package com.engfred.bookstore;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.Gender;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import org.springframework.cache.CacheManager;
+
+import java.util.Date;
+
+/*
+ * The authors and books the tests seed, with every required column filled in, and the cleanup that removes them.
+ * The builders are returned unbuilt so a test sets only the fields it is about.
+ */
+public final class TestData {
+
+    private TestData() {
+    }
+
+    public static User.UserBuilder author(String firstname, String lastname, String email) {
+        return User.builder()
+                .firstname(firstname)
+                .lastname(lastname)
+                .email(email)
+                .phoneNumber("+256700000000")
+                .address("Kampala")
+                .password("secret")
+                .gender(Gender.PREFER_NOT_TO_SAY);
+    }
+
+    public static Book.BookBuilder book(User author, String title, String isbn) {
+        return Book.builder()
+                .title(title)
+                .genre("Fiction")
+                .pages(100)
+                .publishedAt(new Date())
+                .isbn(isbn)
+                .author(author);
+    }
+
+    //Books first, they reference their authors
+    public static void deleteAll(BooksRepository booksRepository, UserRepository userRepository) {
+        booksRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    //The bulk deletes bypass the services, nothing evicted what the deleted rows left cached
+    public static void deleteAll(BooksRepository booksRepository, UserRepository userRepository, CacheManager cacheManager) {
+        deleteAll(booksRepository, userRepository);
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+}
@@ -0,0 +1,45 @@
+package com.engfred.bookstore.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Every pool is sized from the cores unless its own maximum-pool-size is set, the primary's and the replica's apart
+class DataSourcePoolConfigTests {
+
+    private static final int FROM_CORES = Runtime.getRuntime().availableProcessors() * 2 + 1;
+
+    private static int sizedPool(MockEnvironment environment, String beanName) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setMaximumPoolSize(7);
+        new DataSourcePoolConfig(environment, 2, 1).postProcessAfterInitialization(dataSource, beanName);
+        return dataSource.getMaximumPoolSize();
+    }
+
+    @Test
+    void poolsWithoutAnExplicitSizeAreSizedFromTheCores() {
+        MockEnvironment environment = new MockEnvironment();
+
+        assertThat(sizedPool(environment, "dataSource")).isEqualTo(FROM_CORES);
+        assertThat(sizedPool(environment, "primaryDataSource")).isEqualTo(FROM_CORES);
+        assertThat(sizedPool(environment, "replicaDataSource")).isEqualTo(FROM_CORES);
+    }
+
+    @Test
+    void thePrimarySizeLeavesTheReplicaSizedFromTheCores() {
+        MockEnvironment environment = new MockEnvironment().withProperty("spring.datasource.hikari.maximum-pool-size", "7");
+
+        assertThat(sizedPool(environment, "primaryDataSource")).isEqualTo(7);
+        assertThat(sizedPool(environment, "replicaDataSource")).isEqualTo(FROM_CORES);
+    }
+
+    @Test
+    void anExplicitReplicaSizeIsKept() {
+        MockEnvironment environment = new MockEnvironment().withProperty("bookstore.datasource.replica.maximum-pool-size", "7");
+
+        assertThat(sizedPool(environment, "replicaDataSource")).isEqualTo(7);
+        assertThat(sizedPool(environment, "primaryDataSource")).isEqualTo(FROM_CORES);
+    }
+}
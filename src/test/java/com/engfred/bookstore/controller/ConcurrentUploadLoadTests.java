@@ -0,0 +1,141 @@
+package com.engfred.bookstore.controller;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
+import com.engfred.bookstore.service.CloudinaryService;
+import com.engfred.bookstore.service.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+/*
+ * Profile image updates, whose upload blocks the request for seconds (a stub standing in for Cloudinary),
+ * sent far beyond Tomcat's thread limit. Book covers are uploaded in the background and don't block requests.
+ * On virtual threads every upload waits in parallel, and the server keeps answering other requests meanwhile.
+ * With platform threads the same load takes UPLOADS / MAX_THREADS rounds and a book listing queues behind it.
+ * Runs with the default settings, so it also checks that a Java 21 runtime turns virtual threads on by itself.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=" + ConcurrentUploadLoadTests.MAX_THREADS,
+        //Sized out of the way, so only the request threads are measured
+        "spring.datasource.hikari.maximum-pool-size=" + (ConcurrentUploadLoadTests.UPLOADS + 10)
+})
+@EnabledForJreRange(min = JRE.JAVA_21)
+class ConcurrentUploadLoadTests {
+
+    static final int MAX_THREADS = 4;
+    static final int UPLOADS = 40;
+    private static final Duration UPLOAD_LATENCY = Duration.ofSeconds(2);
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @MockitoBean
+    private CloudinaryService cloudinaryService;
+
+    private final List<String> tokens = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int i = 0; i < UPLOADS; i++) {
+            User author = userRepository.save(TestData.author("Author" + i, "Writer", "author" + i + "@bookstore.test")
+                    .bio("Writes books")
+                    .build());
+            tokens.add(jwtService.generateToken(author.getEmail()));
+        }
+
+        given(cloudinaryService.uploadImage(any(MultipartFile.class), eq(ImageType.USER_IMAGE))).willAnswer(invocation -> {
+            Thread.sleep(UPLOAD_LATENCY.toMillis());
+            return new CloudinaryUploadResult("https://res.cloudinary.com/bookstore-test/profile.jpg", "UserImages/profile");
+        });
+    }
+
+    @AfterEach
+    void cleanUp() {
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void concurrentUploadsDoNotExhaustTheRequestThreads() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(UPLOADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<ResponseEntity<String>>> uploads = new ArrayList<>();
+            for (int i = 0; i < UPLOADS; i++) {
+                int index = i;
+                uploads.add(clients.submit(() -> updateProfileImage(index)));
+            }
+
+            //Sent while every upload is still blocked on the stub
+            Thread.sleep(UPLOAD_LATENCY.toMillis() / 4);
+            //A public endpoint on the API port, actuator has a port of its own outside tests
+            long listingStart = System.nanoTime();
+            ResponseEntity<String> listing = restTemplate.getForEntity("/books", String.class);
+            Duration listingLatency = Duration.ofNanos(System.nanoTime() - listingStart);
+
+            for (Future<ResponseEntity<String>> upload : uploads) {
+                assertThat(upload.get().getStatusCode()).isEqualTo(HttpStatus.OK);
+            }
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            assertThat(listing.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(listingLatency).isLessThan(UPLOAD_LATENCY.dividedBy(2));
+            //Platform threads would need UPLOADS / MAX_THREADS = 10 rounds of UPLOAD_LATENCY
+            assertThat(elapsed).isLessThan(UPLOAD_LATENCY.multipliedBy(3));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private ResponseEntity<String> updateProfileImage(int index) {
+        MultiValueMap<String, Object> form = new LinkedMultiValueMap<>();
+        form.add("profileImage", new ByteArrayResource(new byte[64 * 1024]) {
+            @Override
+            public String getFilename() {
+                return "profile-" + index + ".jpg";
+            }
+        });
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        headers.setBearerAuth(tokens.get(index));
+        return restTemplate.exchange("/authors/update", HttpMethod.PUT, new HttpEntity<>(form, headers), String.class);
+    }
+}
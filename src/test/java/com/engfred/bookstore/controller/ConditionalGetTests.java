@@ -0,0 +1,244 @@
+package com.engfred.bookstore.controller;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.CoverImageStatus;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.request.UpdateBookRequest;
+import com.engfred.bookstore.dto.request.UpdateUserRequest;
+import com.engfred.bookstore.service.BooksService;
+import com.engfred.bookstore.service.JwtService;
+import com.engfred.bookstore.service.UserService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ConditionalGetTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User author;
+    private Book book;
+
+    @BeforeEach
+    void seed() {
+        author = userRepository.save(TestData.author("Etag", "Author", "etag.author@bookstore.test").build());
+        book = booksRepository.save(TestData.book(author, "Cached", "isbn-etag").build());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    @Test
+    void unchangedBookIsNotResentAndItsVersionCheckIsOneQuery() throws Exception {
+        MvcResult first = mockMvc.perform(get("/books/{id}", book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).startsWith("\"").endsWith("\"");
+
+        Statistics statistics = statistics();
+        mockMvc.perform(get("/books/{id}", book.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        mockMvc.perform(get("/books/{id}", book.getId())
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, first.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void editingTheBookOrItsAuthorChangesTheBookEtag() throws Exception {
+        String etag = etagOf("/books/" + book.getId());
+
+        //Through the services, which evict the cached book themselves
+        signIn();
+        userService.updateUser(UpdateUserRequest.builder().firstname("Renamed").build());
+        String afterAuthorEdit = mockMvc.perform(get("/books/{id}", book.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(afterAuthorEdit).isNotEqualTo(etag);
+
+        UpdateBookRequest retitle = new UpdateBookRequest();
+        retitle.setTitle("Recached");
+        signIn();
+        booksService.updateBook(retitle, book.getId());
+        mockMvc.perform(get("/books/{id}", book.getId()).header(HttpHeaders.IF_NONE_MATCH, afterAuthorEdit))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etagOf("/books/" + book.getId())));
+    }
+
+    //A MockMvc request clears the security context of the test thread when it completes
+    private void signIn() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(author.getEmail(), null, List.of()));
+    }
+
+    @Test
+    void listPagesAreRevalidatedWithAnAggregateVersion() throws Exception {
+        String etag = etagOf("/books?page=1&size=10&sort=title");
+        String authorEtag = etagOf("/books/author/" + author.getId());
+
+        Statistics statistics = statistics();
+        mockMvc.perform(get("/books?page=1&size=10&sort=title").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().doesNotExist(HttpHeaders.LAST_MODIFIED));
+        //The catalogue version, no page or count query
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        mockMvc.perform(get("/books/author/{id}", author.getId()).header(HttpHeaders.IF_NONE_MATCH, authorEtag))
+                .andExpect(status().isNotModified());
+
+        Book added = booksRepository.save(TestData.book(author, "Another", "isbn-another").build());
+        String afterInsert = etagOf("/books?page=1&size=10&sort=title");
+        assertThat(afterInsert).isNotEqualTo(etag);
+        assertThat(etagOf("/books/author/" + author.getId())).isNotEqualTo(authorEtag);
+
+        //Deletes count as well
+        booksRepository.deleteById(added.getId());
+        mockMvc.perform(get("/books?page=1&size=10&sort=title").header(HttpHeaders.IF_NONE_MATCH, afterInsert))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void catalogueVersionMovesWithWritesThatChangeBookListings() throws Exception {
+        String etag = etagOf("/books");
+
+        //Not an author, no listing shows this user
+        User reader = userRepository.save(TestData.author("Etag", "Reader", "etag.reader@bookstore.test").build());
+        reader.setBio("Reads");
+        userRepository.save(reader);
+        assertThat(etagOf("/books")).isEqualTo(etag);
+
+        author.setBio("Writes");
+        userRepository.save(author);
+        String afterAuthorEdit = etagOf("/books");
+        assertThat(afterAuthorEdit).isNotEqualTo(etag);
+
+        //Column updates outside the services, like the cover pipeline's
+        booksRepository.updateCoverImageStatus(book.getId(), CoverImageStatus.FAILED);
+        String afterColumnUpdate = etagOf("/books");
+        assertThat(afterColumnUpdate).isNotEqualTo(afterAuthorEdit);
+
+        //Folding the logged changes into the version row leaves the tag as it was
+        booksService.compactCatalogueVersion();
+        assertThat(etagOf("/books")).isEqualTo(afterColumnUpdate);
+        booksRepository.save(TestData.book(author, "Folded", "isbn-folded").build());
+        assertThat(etagOf("/books")).isNotEqualTo(afterColumnUpdate);
+    }
+
+    @Test
+    void catalogueWritesDoNotWaitForEachOther() {
+        //An uncommitted book write, like an import chunk in progress, doesn't hold up other writers
+        transactionTemplate.executeWithoutResult(status -> {
+            booksRepository.saveAndFlush(TestData.book(author, "Open", "isbn-open").build());
+            Book other = CompletableFuture
+                    .supplyAsync(() -> booksRepository.save(TestData.book(author, "Other", "isbn-other").build()))
+                    .orTimeout(5, TimeUnit.SECONDS)
+                    .join();
+            assertThat(other.getId()).isNotNull();
+        });
+    }
+
+    @Test
+    void authorHasEtagAndLastModified() throws Exception {
+        String bearer = "Bearer " + jwtService.generateToken(author.getEmail());
+        MvcResult first = mockMvc.perform(get("/authors/{id}", author.getId()).header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        mockMvc.perform(get("/authors/{id}", author.getId()).header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.IF_NONE_MATCH, first.getResponse().getHeader(HttpHeaders.ETAG)))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/authors/{id}", author.getId()).header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, first.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/authors/{id}", UUID.randomUUID()).header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void staleWritesAreRejected() {
+        Book stale = booksRepository.findById(book.getId()).orElseThrow();
+        Book current = booksRepository.findById(book.getId()).orElseThrow();
+        current.setTitle("First writer");
+        booksRepository.save(current);
+
+        stale.setTitle("Second writer");
+        assertThatThrownBy(() -> booksRepository.save(stale)).isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(booksRepository.findAll()).extracting(Book::getTitle).isEqualTo(List.of("First writer"));
+    }
+
+    private String etagOf(String url) throws Exception {
+        return mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        return statistics;
+    }
+}
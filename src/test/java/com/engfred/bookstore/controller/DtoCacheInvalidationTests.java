@@ -0,0 +1,140 @@
+package com.engfred.bookstore.controller;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.config.CacheConfig;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.request.UpdateBookRequest;
+import com.engfred.bookstore.dto.request.UpdateUserRequest;
+import com.engfred.bookstore.service.BooksService;
+import com.engfred.bookstore.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * The books and authors caches are only ever evicted by the services: every write through them is seen by the next
+ * GET /books/{id}, including the cached books of an author who is renamed or deleted. Nothing here evicts by hand.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class DtoCacheInvalidationTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private User author;
+    private Book first;
+    private Book second;
+
+    @BeforeEach
+    void seed() {
+        author = userRepository.save(TestData.author("Wole", "Soyinka", "soyinka@bookstore.test").build());
+        first = booksRepository.save(TestData.book(author, "The Interpreters", "isbn-interpreters").build());
+        second = booksRepository.save(TestData.book(author, "Ake", "isbn-ake").build());
+    }
+
+    //Before each service write: a MockMvc request clears the security context of the test thread when it completes
+    private void signIn() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(author.getEmail(), null, List.of()));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    //Reads the book through the endpoint, leaving it in the books cache
+    private void readBook(UUID id, String title, String authorFirstname) throws Exception {
+        mockMvc.perform(get("/books/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value(title))
+                .andExpect(jsonPath("$.author.firstname").value(authorFirstname));
+        assertThat(cacheManager.getCache(CacheConfig.BOOKS_CACHE).get(id)).isNotNull();
+    }
+
+    @Test
+    void renamingTheAuthorEvictsEveryOneOfTheirBooks() throws Exception {
+        readBook(first.getId(), "The Interpreters", "Wole");
+        readBook(second.getId(), "Ake", "Wole");
+        userService.getUserById(author.getId());
+
+        signIn();
+        userService.updateUser(UpdateUserRequest.builder().firstname("Akinwande").build());
+
+        readBook(first.getId(), "The Interpreters", "Akinwande");
+        readBook(second.getId(), "Ake", "Akinwande");
+        assertThat(userService.getUserById(author.getId()).getFirstname()).isEqualTo("Akinwande");
+    }
+
+    @Test
+    void updatingABookEvictsIt() throws Exception {
+        readBook(first.getId(), "The Interpreters", "Wole");
+
+        UpdateBookRequest request = new UpdateBookRequest();
+        request.setTitle("Season of Anomy");
+        signIn();
+        booksService.updateBook(request, first.getId());
+
+        readBook(first.getId(), "Season of Anomy", "Wole");
+    }
+
+    @Test
+    void deletingABookEvictsIt() throws Exception {
+        readBook(first.getId(), "The Interpreters", "Wole");
+
+        signIn();
+        booksService.deleteBook(first.getId());
+
+        mockMvc.perform(get("/books/{id}", first.getId())).andExpect(status().isNotFound());
+        readBook(second.getId(), "Ake", "Wole");
+    }
+
+    @Test
+    void deletingTheAuthorEvictsThemAndTheirBooks() throws Exception {
+        readBook(first.getId(), "The Interpreters", "Wole");
+        readBook(second.getId(), "Ake", "Wole");
+        userService.getUserById(author.getId());
+
+        signIn();
+        userService.deleteUser();
+
+        mockMvc.perform(get("/books/{id}", first.getId())).andExpect(status().isNotFound());
+        mockMvc.perform(get("/books/{id}", second.getId())).andExpect(status().isNotFound());
+        assertThat(cacheManager.getCache(CacheConfig.AUTHORS_CACHE).get(author.getId())).isNull();
+    }
+}
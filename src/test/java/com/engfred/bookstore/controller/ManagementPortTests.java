@@ -0,0 +1,38 @@
+package com.engfred.bookstore.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.http.HttpStatus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Probes and scrapes are open on the management port only, the API port doesn't serve actuator to anonymous callers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "management.server.port=0")
+@AutoConfigureObservability(tracing = false)
+class ManagementPortTests {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    @Test
+    void prometheusAndHealthAreOnlyOpenOnTheManagementPort() {
+        String management = "http://localhost:" + managementPort;
+        assertThat(restTemplate.getForEntity(management + "/actuator/prometheus", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+        assertThat(restTemplate.getForEntity(management + "/actuator/health", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+        //Other endpoints still need a token
+        assertThat(restTemplate.getForEntity(management + "/actuator/metrics", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.UNAUTHORIZED);
+
+        assertThat(restTemplate.getForEntity("/actuator/prometheus", String.class).getStatusCode())
+                .isIn(HttpStatus.UNAUTHORIZED, HttpStatus.NOT_FOUND);
+    }
+}
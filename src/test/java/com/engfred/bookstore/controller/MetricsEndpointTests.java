@@ -0,0 +1,131 @@
+package com.engfred.bookstore.controller;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.Uploader;
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.ImageAssetRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.service.CloudinaryService;
+import com.engfred.bookstore.service.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
+class MetricsEndpointTests {
+
+    //PNG signature, enough for the image type check
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0};
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ImageAssetRepository imageAssetRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private CloudinaryService cloudinaryService;
+
+    @MockitoBean
+    private Cloudinary cloudinary;
+
+    private User author;
+
+    @BeforeEach
+    void seed() {
+        author = userRepository.save(TestData.author("Metered", "Author", "metered.author@bookstore.test").build());
+        booksRepository.save(TestData.book(author, "Measured", "isbn-metered").build());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        imageAssetRepository.deleteAllInBatch();
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    @Test
+    void prometheusEndpointExposesEveryInstrumentedLayer() throws Exception {
+        Uploader uploader = mock(Uploader.class);
+        when(cloudinary.uploader()).thenReturn(uploader);
+        when(uploader.upload(any(File.class), anyMap())).thenReturn(Map.of("url", "https://images.test/cover.png"));
+        when(uploader.destroy(any(), anyMap())).thenThrow(new IOException("Cloudinary is down"));
+
+        mockMvc.perform(get("/books?page=1&size=10&sort=title")).andExpect(status().isOk());
+        String bearer = "Bearer " + jwtService.generateToken(author.getEmail());
+        mockMvc.perform(get("/authors/{id}", author.getId()).header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk());
+        String publicId = cloudinaryService.uploadImage(
+                new MockMultipartFile("image", "cover.png", "image/png", PNG), ImageType.BOOK_COVER).publicId();
+        assertThatThrownBy(() -> cloudinaryService.deleteImage(publicId)).isInstanceOf(IOException.class);
+
+        //Actuator shares the API port here, so the scrape needs a token (see ManagementPortTests)
+        String scrape = mockMvc.perform(get("/actuator/prometheus").header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(scrape).contains(
+                //Endpoints
+                "http_server_requests_seconds_count{",
+                "uri=\"/books\"",
+                //Services
+                "bookstore_service_seconds_count{",
+                "class=\"com.engfred.bookstore.service.impl.BooksServiceImpl\"",
+                "method=\"getAllBooks\"",
+                "class=\"com.engfred.bookstore.service.impl.UserServiceImpl\"",
+                //JDBC
+                "bookstore_jdbc_statements_count{",
+                "hibernate_query_executions_total{",
+                "hikaricp_connections_active{",
+                //Cloudinary
+                "bookstore_cloudinary_requests_seconds_bucket{",
+                "operation=\"upload\"",
+                "bookstore_cloudinary_failures_total{",
+                "operation=\"destroy\"",
+                //JWT and caches
+                "bookstore_jwt_parse_seconds_count{",
+                "cache=\"jwt.tokens\"",
+                "cache=\"principals\"",
+                "cache=\"books\"",
+                "bookstore_page_cache_requests_total{");
+        assertThat(scrape).contains("bookstore_jdbc_statements_count{method=\"GET\",uri=\"/authors/{id}\"} 1");
+    }
+}
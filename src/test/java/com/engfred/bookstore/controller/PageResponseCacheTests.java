@@ -0,0 +1,152 @@
+package com.engfred.bookstore.controller;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PageResponseCacheTests {
+
+    private static final String FIRST_PAGE = "/books?page=1&size=10&sort=title";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User author;
+
+    @BeforeEach
+    void seed() {
+        author = userRepository.save(TestData.author("Hot", "Page", "hot.page@bookstore.test").build());
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            books.add(book("Book " + (char) ('A' + i), "isbn-" + i));
+        }
+        booksRepository.saveAll(books);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    @Test
+    void repeatedPageIsServedFromItsSerializedCopy() throws Exception {
+        MvcResult first = mockMvc.perform(get(FIRST_PAGE))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/json"))
+                .andExpect(jsonPath("$.content.length()").value(10))
+                .andReturn();
+        double hits = meterRegistry.get("bookstore.page-cache.requests").tag("result", "hit").counter().count();
+
+        Statistics statistics = statistics();
+        MvcResult second = mockMvc.perform(get(FIRST_PAGE))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(second.getResponse().getContentAsByteArray()).isEqualTo(first.getResponse().getContentAsByteArray());
+        assertThat(second.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(first.getResponse().getHeader(HttpHeaders.ETAG));
+        //The catalogue version only, no page, count or author queries
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(meterRegistry.get("bookstore.page-cache.requests").tag("result", "hit").counter().count()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    void gzipVariantIsSentToClientsThatAcceptIt() throws Exception {
+        byte[] json = mockMvc.perform(get(FIRST_PAGE))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn().getResponse().getContentAsByteArray();
+        double saved = meterRegistry.get("bookstore.page-cache.bytes.saved").counter().count();
+
+        MvcResult gzipped = mockMvc.perform(get(FIRST_PAGE).header(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+        byte[] compressed = gzipped.getResponse().getContentAsByteArray();
+
+        assertThat(compressed.length).isLessThan(json.length);
+        assertThat(gunzip(compressed)).isEqualTo(json);
+        assertThat(meterRegistry.get("bookstore.page-cache.bytes.saved").counter().count())
+                .isEqualTo(saved + json.length - compressed.length);
+        mockMvc.perform(get(FIRST_PAGE).header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void writesAreNeverHiddenBehindACachedPage() throws Exception {
+        mockMvc.perform(get(FIRST_PAGE)).andExpect(jsonPath("$.totalElements").value(20));
+        mockMvc.perform(get("/books/author/{id}?page=1&size=10&sort=title", author.getId()))
+                .andExpect(jsonPath("$.totalElements").value(20));
+
+        //Straight to the repository, the copy is dropped because its ETag no longer matches
+        booksRepository.save(book("A new first book", "isbn-new"));
+
+        mockMvc.perform(get(FIRST_PAGE))
+                .andExpect(jsonPath("$.totalElements").value(21))
+                .andExpect(jsonPath("$.content[0].title").value("A new first book"));
+        mockMvc.perform(get("/books/author/{id}?page=1&size=10&sort=title", author.getId()))
+                .andExpect(jsonPath("$.totalElements").value(21));
+    }
+
+    private Book book(String title, String isbn) {
+        return TestData.book(author, title, isbn).build();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return input.readAllBytes();
+        }
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        return statistics;
+    }
+}
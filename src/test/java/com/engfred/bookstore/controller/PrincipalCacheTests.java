@@ -0,0 +1,118 @@
+package com.engfred.bookstore.controller;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.service.JwtService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * Authenticated requests take their principal from PrincipalCache: the users table is queried for the first request
+ * of a token's user only, and again after UserService.updateUser or deleteUser evicted the principal.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class PrincipalCacheTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User author;
+    private String bearer;
+
+    @BeforeEach
+    void seed() {
+        author = userRepository.save(TestData.author("Principal", "Author", "principal.author@bookstore.test").build());
+        bearer = "Bearer " + jwtService.generateToken(author.getEmail());
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    //Executions of UserRepository.findPrincipalByEmail since the seed
+    private long principalQueries() {
+        return Arrays.stream(statistics.getQueries())
+                .filter(query -> query.contains("UserPrincipal"))
+                .mapToLong(query -> statistics.getQueryStatistics(query).getExecutionCount())
+                .sum();
+    }
+
+    private void authenticatedRead() throws Exception {
+        mockMvc.perform(get("/authors/{id}", author.getId()).header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void principalIsLoadedOnceAndReloadedAfterAnUpdate() throws Exception {
+        authenticatedRead();
+        assertThat(principalQueries()).isEqualTo(1);
+        authenticatedRead();
+        authenticatedRead();
+        assertThat(principalQueries()).isEqualTo(1);
+
+        //Authenticated from the cache, then evicted by the update
+        mockMvc.perform(multipart(HttpMethod.PUT, "/authors/update").param("firstname", "Renamed")
+                        .header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk());
+        assertThat(principalQueries()).isEqualTo(1);
+
+        authenticatedRead();
+        assertThat(principalQueries()).isEqualTo(2);
+    }
+
+    @Test
+    void deletedUsersPrincipalIsNotServedFromTheCache() throws Exception {
+        authenticatedRead();
+        mockMvc.perform(delete("/authors/delete").header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().is2xxSuccessful());
+        assertThat(principalQueries()).isEqualTo(1);
+
+        //Looked up again and not found, the token of the deleted user no longer authenticates
+        mockMvc.perform(get("/authors/{id}", author.getId()).header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isUnauthorized());
+        assertThat(principalQueries()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,111 @@
+package com.engfred.bookstore.controller;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * The sort parameter of the paged endpoints: whitelisted fields only, several fields in one direction, the direction
+ * parameter of /authors honoured, and anything no index serves rejected with 400.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class SortParameterTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private User author;
+
+    @BeforeEach
+    void seed() {
+        author = userRepository.save(TestData.author("Chinua", "Achebe", "achebe@bookstore.test").build());
+        userRepository.save(TestData.author("Ngugi", "Thiong'o", "ngugi@bookstore.test").build());
+        booksRepository.save(TestData.book(author, "Arrow of God", "isbn-1").genre("Fiction").build());
+        booksRepository.save(TestData.book(author, "Things Fall Apart", "isbn-2").genre("Fiction").build());
+        booksRepository.save(TestData.book(author, "The Education of a British-Protected Child", "isbn-3").genre("Essays").build());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    @Test
+    void severalFieldsSortInOneDirection() throws Exception {
+        mockMvc.perform(get("/books?sort=genre,title"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].title").value(contains(
+                        "The Education of a British-Protected Child", "Arrow of God", "Things Fall Apart")));
+        mockMvc.perform(get("/books?sort=genre:desc,title:desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].title").value(contains(
+                        "Things Fall Apart", "Arrow of God", "The Education of a British-Protected Child")));
+        mockMvc.perform(get("/books/author/{id}?sort=title:desc", author.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].title").value(contains(
+                        "Things Fall Apart", "The Education of a British-Protected Child", "Arrow of God")));
+    }
+
+    @Test
+    void authorsListingHonoursTheDirectionParameter() throws Exception {
+        mockMvc.perform(get("/authors?sort=firstname&direction=ASC"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].firstname").value(contains("Chinua", "Ngugi")));
+        mockMvc.perform(get("/authors?sort=firstname&direction=DESC"))
+                .andExpect(jsonPath("$.content[*].firstname").value(contains("Ngugi", "Chinua")));
+        //A direction in the sort wins over the parameter
+        mockMvc.perform(get("/authors?sort=firstname:asc&direction=DESC"))
+                .andExpect(jsonPath("$.content[*].firstname").value(contains("Chinua", "Ngugi")));
+    }
+
+    @Test
+    void sortsWithoutAnIndexAreRejected() throws Exception {
+        //Not whitelisted
+        mockMvc.perform(get("/books?sort=description")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/authors?sort=bio")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/authors/search?keyword=chi&sort=address")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/books/search?keyword=arrow&sort=pages")).andExpect(status().isBadRequest());
+        //Whitelisted fields in a combination or mix of directions no index serves
+        mockMvc.perform(get("/books?sort=title,genre")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/books?sort=genre:asc,title:desc")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/books/author/{id}?sort=genre", author.getId())).andExpect(status().isBadRequest());
+        //Cursors hold a single field
+        mockMvc.perform(get("/books?cursor=true&sort=genre,title")).andExpect(status().isBadRequest());
+    }
+
+    //The fulltext ORDER BY is native SQL, a field outside its subquery must never reach it
+    @Test
+    void fullTextOrderRejectsColumnsTheSearchDoesNotSelect() {
+        assertThat(BooksRepository.fullTextOrder(Sort.by("publishedAt", "id")))
+                .extracting(Sort.Order::getProperty).containsExactly("published_at", "rank", "title_similarity", "id");
+        assertThatIllegalArgumentException().isThrownBy(() -> BooksRepository.fullTextOrder(Sort.by("pages")));
+        assertThatIllegalArgumentException().isThrownBy(() -> BooksRepository.fullTextOrder(Sort.by("isbn", "id")));
+    }
+}
@@ -0,0 +1,48 @@
+package com.engfred.bookstore.data.repository;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/*
+ * H2 stand-in for the PostgreSQL triggers of db/migration/V8__catalogue_version.sql, installed by import.sql:
+ * every statement writing books logs a catalogue change, and so does each update of a user who has books.
+ * H2 can't write from a trigger under autocommit, tests writing with plain JDBC do it in a transaction.
+ */
+public class CatalogueVersionTrigger implements Trigger {
+
+    private int idColumn = -1;
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before, int type)
+            throws SQLException {
+        if (tableName.equalsIgnoreCase("users")) {
+            try (ResultSet columns = conn.getMetaData().getColumns(null, schemaName, tableName, "id")) {
+                columns.next();
+                idColumn = columns.getInt("ORDINAL_POSITION") - 1;
+            }
+        }
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (idColumn >= 0 && !hasBooks(conn, newRow[idColumn])) {
+            return;
+        }
+        try (PreparedStatement change = conn.prepareStatement("INSERT INTO catalogue_changes DEFAULT VALUES")) {
+            change.executeUpdate();
+        }
+    }
+
+    private static boolean hasBooks(Connection conn, Object authorId) throws SQLException {
+        try (PreparedStatement books = conn.prepareStatement("SELECT 1 FROM books WHERE author_id = ? LIMIT 1")) {
+            books.setObject(1, authorId);
+            try (ResultSet rows = books.executeQuery()) {
+                return rows.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.engfred.bookstore.data.repository;
+
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.CoverImageStatus;
+import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.utils.KeysetCursor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Runs the Flyway migrations on PostgreSQL, has Hibernate validate the entities against them, then EXPLAINs every
+ * statement the repository queries send over a seeded catalogue and fails on sequential scans.
+ * Each statement is recorded on its way to the driver and explained with the values it was executed with. Queries reading the whole table by design (streamAll, the
+ * catalogue version with its pending changes, the count of an unfiltered listing) are left out, and so is searchBooks: the portable substring search ORs columns
+ * of two tables, which no index serves, and the fulltext strategy replaces it on PostgreSQL.
+ * Skipped when Docker isn't available.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.driver-class-name=org.postgresql.Driver",
+        "spring.flyway.enabled=true",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class RepositoryQueryPlanTests {
+
+    private static final int AUTHORS = 20_000;
+    private static final int BOOKS_PER_AUTHOR = 5;
+    private static final int IMAGE_ASSETS = 20_000;
+    private static final int PAGE_SIZE = 20;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ImageAssetRepository imageAssetRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StatementRecorder statementRecorder;
+
+    private Book book;
+    private User author;
+
+    @BeforeEach
+    void seed() {
+        //The container outlives the test methods, the catalogue is seeded once
+        if (jdbcTemplate.queryForObject("SELECT count(*) FROM users", Long.class) == 0) {
+            jdbcTemplate.update("""
+                INSERT INTO users (id, firstname, lastname, email, phone_number, address, password, gender, created_at, updated_at)
+                SELECT gen_random_uuid(), initcap(substr(md5('first' || i), 1, 10)), initcap(substr(md5('last' || i), 1, 10)),
+                       substr(md5('email' || i), 1, 12) || '@bookstore.test', '+256700000000', 'Kampala', 'secret',
+                       'PREFER_NOT_TO_SAY', now() - i * interval '1 hour', now() - i * interval '1 hour'
+                FROM generate_series(1, ?) i
+            """, AUTHORS);
+            jdbcTemplate.update("""
+                INSERT INTO books (id, title, genre, pages, published_at, isbn, created_at, updated_at, author_id)
+                SELECT gen_random_uuid(), initcap(substr(md5(u.id::text || b), 1, 16)), (ARRAY['Fiction', 'History', 'Poetry', 'Science', 'Travel'])[1 + b % 5],
+                       100 + b, now() - b * interval '1 day', 'isbn-' || md5(u.id::text || b), u.created_at, u.updated_at, u.id
+                FROM users u CROSS JOIN generate_series(1, ?) b
+            """, BOOKS_PER_AUTHOR);
+            jdbcTemplate.update("""
+                INSERT INTO image_assets (id, content_hash, image_type, public_id, image_url, reference_count, created_at)
+                SELECT gen_random_uuid(), md5(i::text) || md5(i::text), CASE WHEN i % 2 = 0 THEN 'BOOK_COVER' ELSE 'USER_IMAGE' END,
+                       'bookstore/' || i, 'https://images.test/' || i, 1, now()
+                FROM generate_series(1, ?) i
+            """, IMAGE_ASSETS);
+            //VACUUM as autovacuum would have: the GIN indexes' own statistics, which the planner costs them with,
+            //are only refreshed by it
+            jdbcTemplate.execute("VACUUM ANALYZE");
+        }
+        book = booksRepository.findAll(PageRequest.of(0, 1)).getContent().get(0);
+        author = userRepository.findById(book.getAuthor().getId()).orElseThrow();
+    }
+
+    @Test
+    void bookQueriesUseIndexes() {
+        for (String sortField : List.of("title", "genre", "createdAt", "publishedAt")) {
+            Sort sort = Sort.by(sortField).and(Sort.by("id"));
+            assertIndexed(() -> booksRepository.findAll(PageRequest.of(10, PAGE_SIZE, sort)));
+            assertIndexed(() -> booksRepository.findAllByAuthorId(author.getId(), PageRequest.of(0, PAGE_SIZE, sort)));
+
+            Specification<Book> after = KeysetCursor.after(book, sortField, Sort.Direction.ASC).toSpecification();
+            assertIndexed(() -> booksRepository.findSlice(after, sort, PAGE_SIZE, "author"));
+        }
+        for (Sort.Direction direction : Sort.Direction.values()) {
+            Sort sort = BooksRepository.LISTING_SORTS.resolve("genre,title", "title", direction);
+            assertIndexed(() -> booksRepository.findAll(PageRequest.of(10, PAGE_SIZE, sort)));
+        }
+        String keyword = book.getTitle().substring(2, 8).toLowerCase(Locale.ROOT);
+        Pageable byTitle = PageRequest.of(0, PAGE_SIZE, BooksRepository.fullTextOrder(Sort.by("title", "id")));
+        assertIndexed(() -> booksRepository.searchIdsByFullText(keyword + ":*", "%" + keyword + "%", keyword, byTitle));
+        //A fragment from the middle of an author's name
+        String authorFragment = author.getLastname().substring(2, 8).toLowerCase(Locale.ROOT);
+        assertIndexed(() -> booksRepository.searchIdsByFullText(authorFragment + ":*", "%" + authorFragment + "%", authorFragment, byTitle));
+        Pageable ranked = PageRequest.of(0, PAGE_SIZE, BooksRepository.fullTextOrder(Sort.by(Sort.Direction.DESC, BooksRepository.RELEVANCE)));
+        assertIndexed(() -> booksRepository.searchIdsByFullText(keyword + ":*", "%" + keyword + "%", keyword, ranked));
+        assertIndexed(() -> booksRepository.findAllByIdIn(List.of(book.getId(), UUID.randomUUID())));
+        assertIndexed(() -> booksRepository.findById(book.getId()));
+        assertIndexed(() -> booksRepository.findVersionById(book.getId()));
+        assertIndexed(() -> booksRepository.summarizeVersionsByAuthorId(author.getId()));
+        assertIndexed(() -> booksRepository.findIdsByAuthorId(author.getId()));
+        assertIndexed(() -> booksRepository.findCoverImagePublicIdsByAuthorId(author.getId()));
+        assertIndexed(() -> booksRepository.lockCoverImagePublicIdById(book.getId()));
+        assertIndexed(() -> booksRepository.updateCoverImage(book.getId(), "https://images.test/cover", "bookstore/cover",
+                CoverImageStatus.READY));
+        assertIndexed(() -> booksRepository.updateCoverImageStatus(book.getId(), CoverImageStatus.READY));
+        assertIndexed(() -> transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Book> books = booksRepository.streamUpdatedSince(new Date())) {
+                books.findFirst();
+            }
+        }));
+    }
+
+    @Test
+    void userQueriesUseIndexes() {
+        Sort sort = Sort.by("firstname").and(Sort.by("id"));
+        assertIndexed(() -> userRepository.findAll(PageRequest.of(10, PAGE_SIZE, sort)));
+        assertIndexed(() -> userRepository.findAll(PageRequest.of(10, PAGE_SIZE, Sort.by("createdAt").and(Sort.by("id")))));
+        Specification<User> after = KeysetCursor.after(author, "firstname", Sort.Direction.ASC).toSpecification();
+        assertIndexed(() -> userRepository.findSlice(after, sort, PAGE_SIZE));
+        for (Sort.Direction direction : Sort.Direction.values()) {
+            Sort byName = UserRepository.LISTING_SORTS.resolve("lastname,firstname", "id", direction);
+            assertIndexed(() -> userRepository.findAll(PageRequest.of(10, PAGE_SIZE, byName)));
+        }
+
+        assertIndexed(() -> userRepository.findById(author.getId()));
+        assertIndexed(() -> userRepository.findByEmail(author.getEmail()));
+        assertIndexed(() -> userRepository.findPrincipalByEmail(author.getEmail()));
+        assertIndexed(() -> userRepository.searchByKeyword(author.getFirstname().substring(2, 8), PageRequest.of(0, PAGE_SIZE)));
+        assertIndexed(() -> userRepository.findVersionById(author.getId()));
+        assertIndexed(() -> userRepository.summarizeVersionsById(author.getId()));
+    }
+
+    @Test
+    void imageAssetQueriesUseIndexes() {
+        assertIndexed(() -> imageAssetRepository.findByContentHashAndImageType("0".repeat(64), ImageType.BOOK_COVER));
+        assertIndexed(() -> imageAssetRepository.existsByPublicId("bookstore/1"));
+        assertIndexed(() -> imageAssetRepository.acquire(UUID.randomUUID()));
+        assertIndexed(() -> imageAssetRepository.release("bookstore/missing"));
+        assertIndexed(() -> imageAssetRepository.deleteUnreferenced("bookstore/missing"));
+    }
+
+    private void assertIndexed(Runnable query) {
+        statementRecorder.clear();
+        query.run();
+
+        for (RecordedStatement statement : statementRecorder.drain()) {
+            //The page metadata of an unfiltered listing counts every row, whatever the indexes
+            if (statement.sql().startsWith("select count(") && !statement.sql().contains(" where ")) {
+                continue;
+            }
+            assertThat(sequentialScans(statement)).as("Sequential scans in %s", statement.sql()).isEmpty();
+        }
+    }
+
+    //Plan of the statement with the values it was executed with. They are inlined: PostgreSQL plans an EXPLAIN
+    //sent with bound parameters generically, without looking at them.
+    private List<String> sequentialScans(RecordedStatement statement) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + statement.inlined(), String.class);
+        List<String> tables = new ArrayList<>();
+        try {
+            collectSequentialScans(objectMapper.readTree(plan).get(0).get("Plan"), tables);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable plan: " + plan, e);
+        }
+        return tables;
+    }
+
+    private static void collectSequentialScans(JsonNode node, List<String> tables) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())) {
+            tables.add(node.path("Relation Name").asText());
+        }
+        node.path("Plans").forEach(child -> collectSequentialScans(child, tables));
+    }
+
+    record RecordedStatement(String sql, List<Object> parameters) {
+
+        String inlined() {
+            StringBuilder inlined = new StringBuilder(sql.length() + 64);
+            int parameter = 0;
+            for (char c : sql.toCharArray()) {
+                if (c == '?') {
+                    inlined.append(literal(parameters.get(parameter++)));
+                } else {
+                    inlined.append(c);
+                }
+            }
+            return inlined.toString();
+        }
+
+        //Untyped literals take their type from the expression, the way parameters do
+        private static String literal(Object value) {
+            if (value == null) {
+                return "NULL";
+            }
+            if (value instanceof Number || value instanceof Boolean) {
+                return value.toString();
+            }
+            return "'" + value.toString().replace("'", "''") + "'";
+        }
+    }
+
+    //Records every statement executed through the DataSource with its bound parameters, under Hibernate and JdbcTemplate alike
+    @TestConfiguration
+    static class StatementRecorder implements BeanPostProcessor {
+
+        private final List<RecordedStatement> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            return bean instanceof DataSource dataSource ? proxy(DataSource.class, dataSource, this::recording) : bean;
+        }
+
+        void clear() {
+            statements.clear();
+        }
+
+        List<RecordedStatement> drain() {
+            List<RecordedStatement> drained = List.copyOf(statements);
+            statements.clear();
+            return drained;
+        }
+
+        private Object recording(Object result, Method method, Object[] args) {
+            if (result instanceof Connection connection) {
+                return proxy(Connection.class, connection, this::recording);
+            }
+            if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                return recording(statement, (String) args[0]);
+            }
+            return result;
+        }
+
+        private PreparedStatement recording(PreparedStatement statement, String sql) {
+            Map<Integer, Object> parameters = new TreeMap<>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                            parameters.put(index, name.equals("setNull") ? null : args[1]);
+                        } else if (name.startsWith("execute")) {
+                            statements.add(new RecordedStatement(sql, new ArrayList<>(parameters.values())));
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static <T> T proxy(Class<T> type, T target, ResultWrapper wrapper) {
+            return type.cast(Proxy.newProxyInstance(StatementRecorder.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> wrapper.wrap(invoke(target, method, args), method, args)));
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        @FunctionalInterface
+        private interface ResultWrapper {
+            Object wrap(Object result, Method method, Object[] args);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class BookExportTests {
+
+    //More than one fetch (and clear) window
+    private static final int BOOKS = 1200;
+
+    @Autowired
+    private BookExportService bookExportService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @BeforeEach
+    void seed() {
+        User author = userRepository.save(TestData.author("Export", "Author", "export.author@bookstore.test").build());
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(TestData.book(author, i == 0 ? "Tales, Volume \"One\"" : "Book " + i, "isbn-" + i)
+                    .pages(100 + i)
+                    .build());
+        }
+        booksRepository.saveAll(books);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.deleteAll(booksRepository, userRepository);
+    }
+
+    @Test
+    void ndjsonExportStreamsEveryBookInOneQuery() throws IOException {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        List<String> lines = export(null, BookFileFormat.NDJSON);
+
+        assertThat(lines).hasSize(BOOKS);
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertThat(first.get("author").get("firstname").asText()).isEqualTo("Export");
+        assertThat(first.hasNonNull("updatedAt")).isTrue();
+        assertThat(lines).extracting(line -> objectMapper.readTree(line).get("id").asText()).isSorted();
+        //Authors come with the books, no count query and no per-row lookups
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void updatedSinceOnlyExportsLaterWrites() throws Exception {
+        Date since = new Date();
+        Thread.sleep(20);
+        Book book = booksRepository.findAll().get(42);
+        book.setTitle("Revised edition");
+        booksRepository.save(book);
+
+        List<String> lines = export(since, BookFileFormat.NDJSON);
+
+        assertThat(lines).singleElement()
+                .satisfies(line -> assertThat(objectMapper.readTree(line).get("title").asText()).isEqualTo("Revised edition"));
+    }
+
+    @Test
+    void csvExportHasAHeaderAndQuotesValues() throws IOException {
+        List<String> lines = export(null, BookFileFormat.CSV);
+
+        assertThat(lines).hasSize(BOOKS + 1);
+        assertThat(lines.get(0)).isEqualTo("id,title,description,genre,pages,publishedAt,isbn,coverImageUrl,"
+                + "coverImageStatus,authorId,authorName,createdAt,updatedAt");
+        assertThat(lines).anySatisfy(line -> assertThat(line).contains(",\"Tales, Volume \"\"One\"\"\",,Fiction,100,"));
+        assertThat(lines.subList(1, lines.size())).allSatisfy(line -> assertThat(line).contains("Export Author"));
+    }
+
+    //Unlike the other book reads, a stream holding a connection for as long as the client reads needs a token
+    @Test
+    void exportEndpointNeedsAToken() throws Exception {
+        mockMvc.perform(get("/books/export")).andExpect(status().isUnauthorized());
+
+        String bearer = "Bearer " + jwtService.generateToken("export.author@bookstore.test");
+        MvcResult started = mockMvc.perform(get("/books/export").header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+    }
+
+    private List<String> export(Date updatedSince, BookFileFormat format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bookExportService.exportBooks(updatedSince, format, output);
+        return output.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
@@ -0,0 +1,138 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.response.BookImportReport;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "bookstore.import.chunk-size=100")
+class BookImportTests {
+
+    private static final int BOOKS = 250;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User author;
+
+    @BeforeEach
+    void signIn() {
+        author = userRepository.save(TestData.author("Import", "Publisher", "import.publisher@bookstore.test").build());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(author.getEmail(), null, List.of()));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository);
+    }
+
+    @Test
+    void ndjsonRecordsAreInsertedInJdbcBatches() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < BOOKS; i++) {
+            ndjson.append("{\"title\":\"Imported ").append(i)
+                    .append("\",\"genre\":\"Fiction\",\"pages\":").append(100 + i)
+                    .append(",\"publishedAt\":\"2020-01-01\",\"isbn\":\"isbn-").append(i).append("\"}\n");
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        BookImportReport report = bookImportService.importBooks(body(ndjson.toString()), BookFileFormat.NDJSON);
+
+        assertThat(report.getTotal()).isEqualTo(BOOKS);
+        assertThat(report.getImported()).isEqualTo(BOOKS);
+        assertThat(report.getFailed()).isZero();
+        assertThat(report.getRows()).extracting(BookImportReport.Row::getRecord).isSorted().hasSize(BOOKS);
+        assertThat(report.getRows()).allSatisfy(row -> assertThat(row.getBookId()).isNotNull());
+        //The author lookup, then one statement per batch of 50 inserts instead of one per book
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(1 + BOOKS / 50 + 3);
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(BOOKS);
+
+        List<Book> books = booksRepository.findAll();
+        assertThat(books).hasSize(BOOKS)
+                .allSatisfy(book -> assertThat(book.getAuthor().getId()).isEqualTo(author.getId()));
+    }
+
+    @Test
+    void invalidNdjsonRecordsAreReportedAndSkipped() throws IOException {
+        String ndjson = """
+                {"title":"Valid","genre":"Fiction","pages":120,"publishedAt":"2020-01-01","isbn":"isbn-1"}
+
+                {"genre":"Fiction","pages":0,"publishedAt":"2020-01-01","isbn":"isbn-2"}
+                {"title":"Broken",
+                {"title":"Also valid","genre":"Poetry","pages":80,"publishedAt":"2019-05-01","isbn":"isbn-3"}
+                """;
+
+        BookImportReport report = bookImportService.importBooks(body(ndjson), BookFileFormat.NDJSON);
+
+        assertThat(report.getTotal()).isEqualTo(4);
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getFailed()).isEqualTo(2);
+        assertThat(report.getRows()).extracting(BookImportReport.Row::getStatus).containsExactly(
+                BookImportReport.Status.IMPORTED, BookImportReport.Status.FAILED,
+                BookImportReport.Status.FAILED, BookImportReport.Status.IMPORTED);
+        assertThat(report.getRows().get(1).getErrors())
+                .containsExactly("Pages must be at least 1", "Title is required");
+        assertThat(report.getRows().get(2).getErrors()).singleElement().asString().startsWith("Malformed record");
+        assertThat(booksRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void csvRowsAreBoundByHeader() throws IOException {
+        String csv = """
+                isbn,title,genre,pages,publishedAt
+                isbn-1,"Tales, Volume One",Fiction,320,2021-03-04
+                isbn-2,Unnumbered,Fiction,many,2021-03-04
+                isbn-3,Future,Fiction,10,2999-01-01
+                """;
+
+        BookImportReport report = bookImportService.importBooks(body(csv), BookFileFormat.CSV);
+
+        assertThat(report.getTotal()).isEqualTo(3);
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getRows().get(1).getErrors()).singleElement().asString().startsWith("Malformed record");
+        assertThat(report.getRows().get(2).getErrors())
+                .containsExactly("Published date must be in the past or present");
+        assertThat(booksRepository.findAll()).singleElement()
+                .satisfies(book -> {
+                    assertThat(book.getTitle()).isEqualTo("Tales, Volume One");
+                    assertThat(book.getPages()).isEqualTo(320);
+                });
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,122 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.response.PagingResult;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Each listing page must cost one select (books joined with authors) plus the count query, whatever the page size
+@SpringBootTest
+class BookListingStatementCountTests {
+
+    private static final int AUTHORS = 5;
+    private static final int BOOKS_PER_AUTHOR = 10;
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User firstAuthor;
+
+    @BeforeEach
+    void seed() {
+        List<Book> books = new ArrayList<>();
+        for (int a = 0; a < AUTHORS; a++) {
+            User author = userRepository.save(TestData.author("Author" + a, "Writer" + a, "author" + a + "@bookstore.test").build());
+            if (firstAuthor == null) {
+                firstAuthor = author;
+            }
+            for (int b = 0; b < BOOKS_PER_AUTHOR; b++) {
+                books.add(TestData.book(author, "Book " + a + "-" + b, "isbn-" + a + "-" + b).build());
+            }
+        }
+        booksRepository.saveAll(books);
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.deleteAll(booksRepository, userRepository);
+        firstAuthor = null;
+    }
+
+    @Test
+    void getAllBooksFetchesAuthorsInThePageQuery() {
+        PagingResult<BookDto> page = booksService.getAllBooks(2, PAGE_SIZE, "title");
+
+        assertThat(page.getContent()).hasSize(PAGE_SIZE)
+                .allSatisfy(book -> assertThat(book.getAuthor().getFirstname()).startsWith("Author"));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void searchBooksFetchesAuthorsInThePageQuery() {
+        PagingResult<BookDto> page = booksService.searchBooks("book", 1, PAGE_SIZE, "title");
+
+        assertThat(page.getContent()).hasSize(PAGE_SIZE)
+                .allSatisfy(book -> assertThat(book.getAuthor()).isNotNull());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void getBooksByAuthorFetchesAuthorsInThePageQuery() {
+        PagingResult<BookDto> page = booksService.getBooksByAuthor(firstAuthor.getId(), 1, 5, "title");
+
+        assertThat(page.getContent()).hasSize(5)
+                .allSatisfy(book -> assertThat(book.getAuthor().getId()).isEqualTo(firstAuthor.getId()));
+        //author existence check + page + count
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void cursorModeWalksTheWholeCatalogueWithoutCountQueries() {
+        Set<UUID> seen = new HashSet<>();
+        String after = null;
+        int slices = 0;
+        do {
+            statistics.clear();
+            PagingResult<BookDto> slice = booksService.getAllBooksAfter(after, 7, "genre");
+
+            slice.getContent().forEach(book -> assertThat(seen.add(book.getId())).isTrue());
+            assertThat(slice.getTotalElements()).isNull();
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+            after = slice.getNextCursor();
+            slices++;
+        } while (after != null);
+
+        assertThat(seen).hasSize(AUTHORS * BOOKS_PER_AUTHOR);
+        assertThat(slices).isEqualTo(8);
+    }
+}
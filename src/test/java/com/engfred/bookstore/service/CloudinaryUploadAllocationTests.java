@@ -0,0 +1,165 @@
+package com.engfred.bookstore.service;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.Uploader;
+import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.repository.ImageAssetRepository;
+import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
+import com.engfred.bookstore.service.impl.CloudinaryServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//A 5 MB upload must go from the multipart part to the uploader without being buffered on the heap
+class CloudinaryUploadAllocationTests {
+
+    private static final int UPLOAD_SIZE = 5 * 1024 * 1024;
+    private static final long MAX_ALLOCATED_PER_UPLOAD = 256 * 1024;
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+
+    private final List<File> uploadedFiles = new ArrayList<>();
+    private CloudinaryServiceImpl cloudinaryService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Cloudinary cloudinary = mock(Cloudinary.class);
+        Uploader uploader = mock(Uploader.class);
+        when(cloudinary.uploader()).thenReturn(uploader);
+        when(uploader.upload(any(), anyMap())).thenAnswer(invocation -> {
+            File file = invocation.getArgument(0);
+            assertThat(file).hasSize(UPLOAD_SIZE);
+            uploadedFiles.add(file);
+            return Map.of("url", "https://res.cloudinary.com/bookstore-test/image.png");
+        });
+        cloudinaryService = new CloudinaryServiceImpl(cloudinary, mock(ImageAssetRepository.class), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void uploadStreamsThePartInsteadOfBufferingIt() throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 3; i++) {
+            cloudinaryService.uploadImage(new SpooledPart("cover.png", PNG), ImageType.BOOK_COVER);
+        }
+
+        int uploads = 10;
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < uploads; i++) {
+            cloudinaryService.uploadImage(new SpooledPart("cover.png", PNG), ImageType.BOOK_COVER);
+        }
+        long allocatedPerUpload = (threads.getCurrentThreadAllocatedBytes() - before) / uploads;
+
+        assertThat(allocatedPerUpload).isLessThan(MAX_ALLOCATED_PER_UPLOAD);
+    }
+
+    @Test
+    void clientFileNameIsNeverUsedAndTheTempFileIsRemoved() throws IOException {
+        CloudinaryUploadResult result = cloudinaryService.uploadImage(new SpooledPart("../../cover.png", PNG), ImageType.USER_IMAGE);
+
+        assertThat(result.publicId()).startsWith("UserImages/");
+        assertThat(uploadedFiles).singleElement().satisfies(file -> {
+            assertThat(file.getName()).startsWith("upload-").doesNotContain("cover");
+            assertThat(file).doesNotExist();
+        });
+    }
+
+    @Test
+    void typeIsSniffedFromTheContentNotTheHeader() {
+        byte[] script = "#!/bin/sh\nrm -rf /".getBytes();
+
+        assertThatThrownBy(() -> cloudinaryService.uploadImage(new SpooledPart("cover.png", script), ImageType.BOOK_COVER))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(uploadedFiles).isEmpty();
+    }
+
+    //Multipart file generated on the fly, like a part the container spooled to disk: no backing byte[] to hand out
+    private record SpooledPart(String originalFilename, byte[] header) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public long getSize() {
+            return UPLOAD_SIZE;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new UnsupportedOperationException("The upload must be streamed");
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private int position;
+
+                @Override
+                public int read() {
+                    if (position >= UPLOAD_SIZE) {
+                        return -1;
+                    }
+                    return position < header.length ? header[position++] & 0xFF : (position++ & 0x7F);
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    if (position >= UPLOAD_SIZE) {
+                        return -1;
+                    }
+                    int count = Math.min(length, UPLOAD_SIZE - position);
+                    for (int i = 0; i < count; i++) {
+                        buffer[offset + i] = (byte) read();
+                    }
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            try (InputStream in = getInputStream()) {
+                Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        @Override
+        public void transferTo(Path dest) throws IOException {
+            transferTo(dest.toFile());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.CoverImageStatus;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.request.CreateBookRequest;
+import com.engfred.bookstore.dto.request.UpdateBookRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "bookstore.uploads.staging-dir=${java.io.tmpdir}/bookstore-uploads-tests",
+        "bookstore.uploads.max-attempts=3",
+        "bookstore.uploads.initial-backoff=10ms",
+        "bookstore.uploads.max-backoff=40ms"
+})
+@Import(LocalCloudinaryService.class)
+class CoverImagePipelineTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F'};
+    private static final byte[] WEBP = {'R', 'I', 'F', 'F', 36, 0, 0, 0, 'W', 'E', 'B', 'P'};
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LocalCloudinaryService cloudinaryService;
+
+    //Stands in for open-in-view: reading a book maps its lazily loaded author
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${bookstore.uploads.staging-dir}")
+    private Path stagingDirectory;
+
+    @BeforeEach
+    void signIn() {
+        User author = userRepository.save(TestData.author("Cover", "Author", "cover.author@bookstore.test").build());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(author.getEmail(), null, List.of()));
+        cloudinaryService.reset();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository);
+    }
+
+    @Test
+    void bookIsSavedRightAwayAndTheCoverCompletesInTheBackground() throws Exception {
+        BookDto created = booksService.createBook(createRequest(cover(PNG)));
+
+        assertThat(created.getCoverImageStatus()).isEqualTo(CoverImageStatus.PENDING);
+        assertThat(created.getCoverImageUrl()).isNull();
+        //Read while pending, must not be served from the cache once the upload completes
+        getBook(created.getId());
+
+        BookDto ready = awaitCoverStatus(created.getId(), CoverImageStatus.READY);
+        assertThat(ready.getCoverImageUrl()).startsWith("file:");
+        assertThat(booksRepository.findById(created.getId()).orElseThrow().getCoverImagePublicId()).startsWith("BookCovers/");
+        assertThat(stagedFiles()).isEmpty();
+    }
+
+    @Test
+    void bookWithoutCoverHasNoUpload() throws Exception {
+        CreateBookRequest request = createRequest(null);
+
+        BookDto created = booksService.createBook(request);
+
+        assertThat(created.getCoverImageStatus()).isEqualTo(CoverImageStatus.NONE);
+        assertThat(cloudinaryService.uploadAttempts()).isZero();
+    }
+
+    @Test
+    void transientUploadFailuresAreRetried() throws Exception {
+        cloudinaryService.failNextUploads(2);
+
+        BookDto created = booksService.createBook(createRequest(cover(JPEG)));
+
+        awaitCoverStatus(created.getId(), CoverImageStatus.READY);
+        assertThat(cloudinaryService.uploadAttempts()).isEqualTo(3);
+    }
+
+    @Test
+    void coverFailsOnceAttemptsAreExhausted() throws Exception {
+        cloudinaryService.failNextUploads(10);
+
+        BookDto created = booksService.createBook(createRequest(cover(JPEG)));
+
+        BookDto failed = awaitCoverStatus(created.getId(), CoverImageStatus.FAILED);
+        assertThat(failed.getCoverImageUrl()).isNull();
+        assertThat(cloudinaryService.uploadAttempts()).isEqualTo(3);
+        assertThat(stagedFiles()).isEmpty();
+    }
+
+    @Test
+    void newCoverReplacesThePreviousImageOnceUploaded() throws Exception {
+        BookDto created = booksService.createBook(createRequest(cover(PNG)));
+        awaitCoverStatus(created.getId(), CoverImageStatus.READY);
+        String previousPublicId = booksRepository.findById(created.getId()).orElseThrow().getCoverImagePublicId();
+
+        UpdateBookRequest update = new UpdateBookRequest();
+        update.setCoverImage(cover(WEBP));
+        BookDto updated = transactionTemplate.execute(status -> {
+            try {
+                return booksService.updateBook(update, created.getId());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        assertThat(updated.getCoverImageStatus()).isEqualTo(CoverImageStatus.PENDING);
+        awaitCoverStatus(created.getId(), CoverImageStatus.READY);
+        assertThat(booksRepository.findById(created.getId()).orElseThrow().getCoverImagePublicId()).isNotEqualTo(previousPublicId);
+        assertThat(cloudinaryService.deletedImages()).containsExactly(previousPublicId);
+        assertThat(cloudinaryService.isStored(previousPublicId)).isFalse();
+    }
+
+    @Test
+    void unsupportedImageIsRejectedBeforeTheBookIsSaved() {
+        MockMultipartFile notAnImage = new MockMultipartFile("coverImage", "cover.png", "image/png", "<html></html>".getBytes());
+
+        assertThatThrownBy(() -> booksService.createBook(createRequest(notAnImage)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(booksRepository.count()).isZero();
+    }
+
+    private BookDto awaitCoverStatus(UUID bookId, CoverImageStatus status) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        BookDto book = getBook(bookId);
+        while (book.getCoverImageStatus() != status && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            book = getBook(bookId);
+        }
+        assertThat(book.getCoverImageStatus()).isEqualTo(status);
+        return book;
+    }
+
+    private BookDto getBook(UUID bookId) {
+        return transactionTemplate.execute(status -> booksService.getBookById(bookId));
+    }
+
+    private List<Path> stagedFiles() throws Exception {
+        try (Stream<Path> files = Files.list(stagingDirectory)) {
+            return files.toList();
+        }
+    }
+
+    private static CreateBookRequest createRequest(MockMultipartFile coverImage) {
+        CreateBookRequest request = new CreateBookRequest();
+        request.setTitle("Things Fall Apart");
+        request.setDescription("A novel");
+        request.setGenre("Fiction");
+        request.setPages(209);
+        request.setPublishedAt(new Date());
+        request.setIsbn("978-0385474542");
+        request.setCoverImage(coverImage);
+        return request;
+    }
+
+    private static MockMultipartFile cover(byte[] content) {
+        return new MockMultipartFile("coverImage", "cover.img", "application/octet-stream", content);
+    }
+}
@@ -0,0 +1,103 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.cache.CacheManager;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * The fulltext strategy on PostgreSQL: results are ranked unless the client sorts by a column, relevance then only
+ * orders the rows that sort leaves tied, and fragments from the middle of an author's name match their books.
+ * Skipped when Docker isn't available.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.driver-class-name=org.postgresql.Driver",
+        "spring.flyway.enabled=true",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "bookstore.search.strategy=fulltext"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class FullTextSearchTests {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    void seed() {
+        User author = userRepository.save(TestData.author("Chimamanda", "Adichie", "adichie@bookstore.test").build());
+        //"war" ranks highest where it is the whole title
+        save("War", "Fiction", "isbn-1", author);
+        save("Anthills of War", "Fiction", "isbn-2", author);
+        save("Zebra War Stories", "History", "isbn-3", author);
+        save("Purple Hibiscus", "Fiction", "isbn-4", author);
+    }
+
+    private void save(String title, String genre, String isbn, User author) {
+        booksRepository.save(TestData.book(author, title, isbn).genre(genre).build());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    @Test
+    void resultsAreRankedUnlessSortedByAColumn() {
+        assertThat(booksService.searchBooks("war", 1, 10, null).getContent())
+                .extracting(BookDto::getTitle)
+                .startsWith("War")
+                .hasSize(3);
+        assertThat(booksService.searchBooks("war", 1, 10, "relevance").getContent())
+                .extracting(BookDto::getTitle)
+                .isEqualTo(booksService.searchBooks("war", 1, 10, null).getContent().stream().map(BookDto::getTitle).toList());
+    }
+
+    @Test
+    void resultsFollowTheRequestedSort() {
+        assertThat(booksService.searchBooks("war", 1, 10, "title").getContent())
+                .extracting(BookDto::getTitle)
+                .containsExactly("Anthills of War", "War", "Zebra War Stories");
+        assertThat(booksService.searchBooks("war", 1, 10, "title:desc").getContent())
+                .extracting(BookDto::getTitle)
+                .containsExactly("Zebra War Stories", "War", "Anthills of War");
+        //Within a genre, the better match first
+        assertThat(booksService.searchBooks("war", 1, 10, "genre").getContent())
+                .extracting(BookDto::getTitle)
+                .containsExactly("War", "Anthills of War", "Zebra War Stories");
+    }
+
+    @Test
+    void fragmentsOfAnAuthorsNameMatchTheirBooks() {
+        assertThat(booksService.searchBooks("dichi", 1, 10, "title").getContent())
+                .extracting(BookDto::getTitle)
+                .containsExactly("Anthills of War", "Purple Hibiscus", "War", "Zebra War Stories");
+        assertThat(booksService.searchBooks("dichi", 1, 10, "title").getTotalElements()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,124 @@
+package com.engfred.bookstore.service;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.Uploader;
+import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.data.repository.ImageAssetRepository;
+import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+//Identical images are uploaded once and destroyed only when their last reference is released
+@SpringBootTest
+class ImageDeduplicationTests {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F'};
+
+    @MockitoBean
+    private Cloudinary cloudinary;
+
+    @Autowired
+    private CloudinaryService cloudinaryService;
+
+    @Autowired
+    private ImageAssetRepository imageAssetRepository;
+
+    private final List<Path> images = new ArrayList<>();
+    private Uploader uploader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        uploader = mock(Uploader.class);
+        when(cloudinary.uploader()).thenReturn(uploader);
+        when(uploader.upload(any(), anyMap())).thenAnswer(invocation -> {
+            Map<?, ?> params = invocation.getArgument(1);
+            return Map.of("url", "https://res.cloudinary.com/bookstore-test/" + params.get("public_id") + ".png");
+        });
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        imageAssetRepository.deleteAllInBatch();
+        for (Path image : images) {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test
+    void identicalImageIsUploadedOnce() throws IOException {
+        CloudinaryUploadResult first = cloudinaryService.uploadImage(image(PNG), ImageType.BOOK_COVER);
+        CloudinaryUploadResult second = cloudinaryService.uploadImage(image(PNG), ImageType.BOOK_COVER);
+
+        assertThat(second).isEqualTo(first);
+        verify(uploader, times(1)).upload(any(), anyMap());
+        assertThat(imageAssetRepository.findAll()).singleElement()
+                .satisfies(asset -> assertThat(asset.getReferenceCount()).isEqualTo(2));
+    }
+
+    @Test
+    void differentContentOrTypeIsUploadedSeparately() throws IOException {
+        CloudinaryUploadResult cover = cloudinaryService.uploadImage(image(PNG), ImageType.BOOK_COVER);
+        CloudinaryUploadResult otherCover = cloudinaryService.uploadImage(image(JPEG), ImageType.BOOK_COVER);
+        CloudinaryUploadResult profileImage = cloudinaryService.uploadImage(image(PNG), ImageType.USER_IMAGE);
+
+        assertThat(otherCover.publicId()).isNotEqualTo(cover.publicId());
+        assertThat(profileImage.publicId()).startsWith("UserImages/");
+        verify(uploader, times(3)).upload(any(), anyMap());
+    }
+
+    @Test
+    void imageIsDestroyedWithItsLastReference() throws IOException {
+        CloudinaryUploadResult first = cloudinaryService.uploadImage(image(PNG), ImageType.BOOK_COVER);
+        cloudinaryService.uploadImage(image(PNG), ImageType.BOOK_COVER);
+
+        cloudinaryService.deleteImage(first.publicId());
+        verify(uploader, never()).destroy(anyString(), anyMap());
+        assertThat(imageAssetRepository.existsByPublicId(first.publicId())).isTrue();
+
+        cloudinaryService.deleteImage(first.publicId());
+        verify(uploader).destroy(eq(first.publicId()), anyMap());
+        assertThat(imageAssetRepository.count()).isZero();
+
+        //Uploading it again after that is a fresh upload
+        CloudinaryUploadResult again = cloudinaryService.uploadImage(image(PNG), ImageType.BOOK_COVER);
+        assertThat(again.publicId()).isNotEqualTo(first.publicId());
+        verify(uploader, times(2)).upload(any(), anyMap());
+    }
+
+    @Test
+    void imageUploadedBeforeIndexingIsDestroyedDirectly() throws IOException {
+        cloudinaryService.deleteImage("BookCovers/legacy");
+
+        verify(uploader).destroy(eq("BookCovers/legacy"), anyMap());
+    }
+
+    private Path image(byte[] content) throws IOException {
+        Path image = Files.createTempFile("dedup-", ".img");
+        Files.write(image, content);
+        images.add(image);
+        return image;
+    }
+}
@@ -0,0 +1,138 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.request.UpdateBookRequest;
+import com.engfred.bookstore.service.impl.InMemoryBookSearchStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//The index strategy pages like the JPQL query it falls back to, keeps the writes made while it is rebuilt, only
+//ever sees committed ones and doesn't page by cursor
+@SpringBootTest(properties = "bookstore.search.strategy=index")
+class InMemoryBookSearchTests {
+
+    @Autowired
+    private InMemoryBookSearchStrategy strategy;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BooksService booksService;
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository);
+    }
+
+    @Test
+    void indexOrdersPagesLikeTheDatabase() {
+        User author = userRepository.save(TestData.author("Ordered", "Author", "ordered.author@bookstore.test").build());
+        List<Book> books = new ArrayList<>();
+        //Case, accents and shared titles, so that the id tiebreaker decides too
+        String[] titles = {"apple saga", "Apple saga", "Banana saga", "banana saga", "Éclair saga", "eclair saga", "Zebra saga"};
+        for (int i = 0; i < 21; i++) {
+            books.add(TestData.book(author, titles[i % titles.length], "isbn-ordered-" + i)
+                    .genre(i % 2 == 0 ? "fiction" : "Fiction")
+                    .build());
+        }
+        booksRepository.saveAll(books);
+        strategy.rebuild();
+
+        //Each ends with id, so the query's order is total too
+        for (Sort sort : List.of(Sort.by("title", "id"),
+                Sort.by(Sort.Direction.DESC, "title", "id"),
+                Sort.by("genre", "title", "id"),
+                Sort.by(Sort.Direction.DESC, "id"))) {
+            for (int page = 0; page < 3; page++) {
+                PageRequest pageable = PageRequest.of(page, 8, sort);
+                assertThat(ids(strategy.search("saga", pageable)))
+                        .as("Page %d by %s", page, sort)
+                        .isEqualTo(ids(booksRepository.searchBooks("saga", pageable)));
+            }
+        }
+    }
+
+    @Test
+    void rebuildKeepsWritesMadeWhileItReadTheCatalogue() {
+        User author = TestData.author("Racing", "Author", "racing.author@bookstore.test").id(UUID.randomUUID()).build();
+        Book deleted = TestData.book(author, "Vanishing saga", "isbn-deleted").id(UUID.randomUUID()).build();
+        Book renamed = TestData.book(author, "Old saga", "isbn-renamed").id(UUID.randomUUID()).build();
+        Book renamedNow = TestData.book(author, "New saga", "isbn-renamed").id(renamed.getId()).build();
+
+        BooksRepository repository = mock(BooksRepository.class);
+        InMemoryBookSearchStrategy rebuilding = new InMemoryBookSearchStrategy(repository, mock(JdbcTemplate.class));
+        //The slice is read, then both books are written before the rebuild puts it into the index
+        when(repository.findSlice(any(), any(), anyInt(), eq("author"))).thenAnswer(invocation -> {
+            rebuilding.onBookDeleted(deleted.getId());
+            rebuilding.onBookSaved(renamedNow);
+            return new SliceImpl<>(List.of(deleted, renamed));
+        });
+        when(repository.findAllByIdIn(any())).thenAnswer(invocation -> List.of(renamedNow));
+
+        rebuilding.rebuild();
+
+        assertThat(rebuilding.search("vanishing", PageRequest.of(0, 10, Sort.by("title"))).getTotalElements()).isZero();
+        assertThat(rebuilding.search("old", PageRequest.of(0, 10, Sort.by("title"))).getTotalElements()).isZero();
+        assertThat(rebuilding.search("new saga", PageRequest.of(0, 10, Sort.by("title"))).getContent()).containsExactly(renamedNow);
+    }
+
+    @Test
+    void anUpdateThatFailsToCommitNeverReachesTheIndex() {
+        User author = userRepository.save(TestData.author("Failing", "Author", "failing.author@bookstore.test").build());
+        Book book = booksRepository.save(TestData.book(author, "Committed saga", "isbn-committed").build());
+        strategy.rebuild();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(author.getEmail(), null, List.of()));
+
+        //Longer than the column, the database rejects the update when it is flushed at commit
+        UpdateBookRequest request = new UpdateBookRequest();
+        request.setTitle("Uncommitted saga " + "x".repeat(300));
+        assertThatThrownBy(() -> booksService.updateBook(request, book.getId())).isInstanceOf(DataAccessException.class);
+
+        assertThat(strategy.search("uncommitted", PageRequest.of(0, 10, Sort.by("title"))).getTotalElements()).isZero();
+        assertThat(ids(strategy.search("committed", PageRequest.of(0, 10, Sort.by("title"))))).containsExactly(book.getId());
+    }
+
+    //The index matches word prefixes, a criteria slice would match substrings: cursor searches are refused instead
+    @Test
+    void cursorSearchIsRejected() {
+        assertThatThrownBy(() -> booksService.searchBooksAfter("saga", null, 10, "title"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("jpql");
+    }
+
+    private static List<UUID> ids(Page<Book> page) {
+        return page.getContent().stream().map(Book::getId).toList();
+    }
+}
@@ -0,0 +1,110 @@
+package com.engfred.bookstore.service;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.crypto.SecretKey;
+import java.nio.file.AccessDeniedException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ * The verified token cache of JwtService: a token is verified once and then served from the cache until its "exp",
+ * a token failing verification is never cached, and hits and misses reach the stats and the jwt.tokens meters.
+ * The context is shared with other tests, so every count is taken as a difference.
+ */
+@SpringBootTest
+class JwtTokenCacheTests {
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${jwt.secret}")
+    private String jwtSecret;
+
+    private SecretKey signingKey;
+    private CacheStats before;
+
+    @BeforeEach
+    void snapshotStats() {
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        before = jwtService.tokenCacheStats();
+    }
+
+    private static String token(String email, Instant expiration, SecretKey key) {
+        return Jwts.builder()
+                .subject(email)
+                .issuedAt(new Date())
+                .expiration(Date.from(expiration))
+                .signWith(key)
+                .compact();
+    }
+
+    private CacheStats counted() {
+        return jwtService.tokenCacheStats().minus(before);
+    }
+
+    private double meteredGets(String result) {
+        return meterRegistry.get("cache.gets").tag("name", "jwt.tokens").tag("result", result).functionCounter().count();
+    }
+
+    @Test
+    void aVerifiedTokenIsServedFromTheCache() throws Exception {
+        double meteredHits = meteredGets("hit");
+        double meteredMisses = meteredGets("miss");
+        String token = jwtService.generateToken("cached@bookstore.test");
+
+        assertThat(jwtService.extractEmail(token)).isEqualTo("cached@bookstore.test");
+        assertThat(jwtService.extractEmail(token)).isEqualTo("cached@bookstore.test");
+        assertThat(jwtService.extractEmail(token)).isEqualTo("cached@bookstore.test");
+
+        assertThat(counted().missCount()).isEqualTo(1);
+        assertThat(counted().hitCount()).isEqualTo(2);
+        assertThat(meteredGets("miss") - meteredMisses).isEqualTo(1);
+        assertThat(meteredGets("hit") - meteredHits).isEqualTo(2);
+    }
+
+    @Test
+    void aCachedTokenIsNotServedAfterItsExpiration() throws Exception {
+        //"exp" has a precision of seconds, two leave time to verify and cache the token first
+        Instant expiration = Instant.now().plus(2, ChronoUnit.SECONDS).truncatedTo(ChronoUnit.SECONDS);
+        String token = token("expiring@bookstore.test", expiration, signingKey);
+        assertThat(jwtService.extractEmail(token)).isEqualTo("expiring@bookstore.test");
+        assertThat(jwtService.extractEmail(token)).isEqualTo("expiring@bookstore.test");
+
+        Thread.sleep(Math.max(0, expiration.toEpochMilli() - System.currentTimeMillis()) + 100);
+
+        //Evicted with the token, the parser then rejects it
+        assertThatThrownBy(() -> jwtService.extractEmail(token)).isInstanceOf(AccessDeniedException.class);
+        assertThat(counted().hitCount()).isEqualTo(1);
+        assertThat(counted().missCount()).isEqualTo(2);
+    }
+
+    @Test
+    void aTokenWithABadSignatureIsNeverCached() {
+        SecretKey otherKey = Jwts.SIG.HS256.key().build();
+        String forged = token("forged@bookstore.test", Instant.now().plus(1, ChronoUnit.HOURS), otherKey);
+
+        assertThatThrownBy(() -> jwtService.extractEmail(forged)).isInstanceOf(AccessDeniedException.class);
+        assertThatThrownBy(() -> jwtService.extractEmail(forged)).isInstanceOf(AccessDeniedException.class);
+
+        //Both attempts verified the signature, neither found a cached entry
+        assertThat(counted().hitCount()).isZero();
+        assertThat(counted().missCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,155 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.response.PagingResult;
+import com.engfred.bookstore.utils.KeysetCursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * Cursor (keyset) paging: walking the slices returns every book once, in the order of the sort with the id as
+ * tiebreaker, the last slice has no nextCursor and a cursor that was tampered with or issued for another sort is a 400.
+ * Three genres and a few creation batches leave most sort values tied.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class KeysetPagingTests {
+
+    private static final String[] GENRES = {"Fiction", "Poetry", "Drama"};
+    private static final int BATCHES = 4;
+    private static final int BOOKS_PER_BATCH = 6;
+    private static final int BOOKS = BATCHES * BOOKS_PER_BATCH;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() throws InterruptedException {
+        User author = userRepository.save(TestData.author("Keyset", "Author", "keyset.author@bookstore.test").build());
+        //Each batch shares its creation time or nearly so, the batches apart
+        for (int batch = 0; batch < BATCHES; batch++) {
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < BOOKS_PER_BATCH; i++) {
+                int n = batch * BOOKS_PER_BATCH + i;
+                books.add(TestData.book(author, "Saga " + n, "isbn-keyset-" + n).genre(GENRES[n % GENRES.length]).build());
+            }
+            booksRepository.saveAll(books);
+            Thread.sleep(5);
+        }
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+    }
+
+    //Follows nextCursor from the first slice to the last, every slice but the last one full
+    private static List<UUID> walk(Function<String, PagingResult<BookDto>> slices, int size) {
+        List<UUID> ids = new ArrayList<>();
+        String after = null;
+        PagingResult<BookDto> slice;
+        do {
+            slice = slices.apply(after);
+            slice.getContent().forEach(book -> ids.add(book.getId()));
+            after = slice.getNextCursor();
+            if (after != null) {
+                assertThat(slice.getContent()).hasSize(size);
+            }
+        } while (after != null);
+        assertThat(slice.getContent()).isNotEmpty();
+        return ids;
+    }
+
+    private List<UUID> idsSortedBy(Sort sort) {
+        return booksRepository.findAll(sort).stream().map(Book::getId).toList();
+    }
+
+    @Test
+    void tiedSortValuesAreNeitherSkippedNorRepeated() {
+        List<UUID> walked = walk(after -> booksService.getAllBooksAfter(after, 5, "genre"), 5);
+
+        assertThat(walked).hasSize(BOOKS).doesNotHaveDuplicates()
+                .containsExactlyElementsOf(idsSortedBy(Sort.by("genre", "id")));
+    }
+
+    @Test
+    void theLastSliceHasNoNextCursor() {
+        //An exact multiple of the slice size: the last full slice already knows nothing follows
+        List<PagingResult<BookDto>> slices = new ArrayList<>();
+        String after = null;
+        do {
+            PagingResult<BookDto> slice = booksService.getAllBooksAfter(after, BOOKS / 3, "title");
+            slices.add(slice);
+            after = slice.getNextCursor();
+        } while (after != null);
+
+        assertThat(slices).hasSize(3);
+        assertThat(slices.get(2).getContent()).hasSize(BOOKS / 3);
+        assertThat(slices.get(2).getNextCursor()).isNull();
+        assertThat(booksService.getAllBooksAfter(null, BOOKS, "title").getNextCursor()).isNull();
+    }
+
+    @Test
+    void descendingCreatedAtSlicesFollowTheSort() {
+        List<UUID> walked = walk(after -> booksService.getAllBooksAfter(after, 4, "createdAt:desc"), 4);
+
+        assertThat(walked).hasSize(BOOKS)
+                .containsExactlyElementsOf(idsSortedBy(Sort.by(Sort.Direction.DESC, "createdAt", "id")));
+    }
+
+    @Test
+    void cursorSearchFindsWhatPagedSearchFinds() {
+        List<UUID> walked = walk(after -> booksService.searchBooksAfter("saga 1", after, 3, "title"), 3);
+
+        List<UUID> paged = booksService.searchBooks("saga 1", 1, BOOKS, "title").getContent().stream().map(BookDto::getId).toList();
+        assertThat(walked).isNotEmpty().containsExactlyElementsOf(paged);
+    }
+
+    @Test
+    void tamperedCursorsAndCursorsOfAnotherSortAreRejected() throws Exception {
+        String byTitle = booksService.getAllBooksAfter(null, 5, "title").getNextCursor();
+        String byCreatedAt = booksService.getAllBooksAfter(null, 5, "createdAt").getNextCursor();
+        KeysetCursor createdAt = KeysetCursor.decode(byCreatedAt);
+        String unparsableValue = new KeysetCursor(createdAt.sortField(), createdAt.direction(), "yesterday", createdAt.id()).encode();
+
+        mockMvc.perform(get("/books").param("after", byTitle).param("sort", "title")).andExpect(status().isOk());
+        mockMvc.perform(get("/books").param("after", "not-a-cursor").param("sort", "title")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/books").param("after", byTitle.substring(3)).param("sort", "title")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/books").param("after", byTitle).param("sort", "genre")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/books").param("after", byTitle).param("sort", "title:desc")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/books").param("after", unparsableValue).param("sort", "createdAt")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,88 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.data.entities.ImageType;
+import com.engfred.bookstore.dto.response.CloudinaryUploadResult;
+import com.engfred.bookstore.utils.ImageFiles;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Stand-in for the Cloudinary-backed service (@Import it): images are copied to a local directory and upload failures can be scripted
+@Primary
+public class LocalCloudinaryService implements CloudinaryService {
+
+    private final Path root;
+    private final AtomicInteger failuresToInject = new AtomicInteger();
+    private final AtomicInteger uploadAttempts = new AtomicInteger();
+    private final Set<String> deletedImages = ConcurrentHashMap.newKeySet();
+
+    public LocalCloudinaryService() throws IOException {
+        this.root = Files.createTempDirectory("cloudinary-");
+    }
+
+    @Override
+    public CloudinaryUploadResult uploadImage(MultipartFile file, ImageType imageType) throws IOException {
+        ImageFiles.requireSupportedImage(file);
+        Path received = Files.createTempFile(root, "received-", ".img");
+        try {
+            ImageFiles.transfer(file, received);
+            return uploadImage(received, imageType);
+        } finally {
+            Files.deleteIfExists(received);
+        }
+    }
+
+    @Override
+    public CloudinaryUploadResult uploadImage(Path image, ImageType imageType) throws IOException {
+        uploadAttempts.incrementAndGet();
+        if (failuresToInject.getAndUpdate(remaining -> Math.max(remaining - 1, 0)) > 0) {
+            throw new IOException("Simulated upload failure");
+        }
+
+        String publicId = (imageType == ImageType.BOOK_COVER ? "BookCovers" : "UserImages") + "/" + UUID.randomUUID();
+        Path stored = stored(publicId);
+        Files.createDirectories(stored.getParent());
+        Files.copy(image, stored);
+        return new CloudinaryUploadResult(stored.toUri().toString(), publicId);
+    }
+
+    @Override
+    public void deleteImage(String publicId) throws IOException {
+        deletedImages.add(publicId);
+        Files.deleteIfExists(stored(publicId));
+    }
+
+    //The next uploads throw an IOException, as a network failure would
+    public void failNextUploads(int count) {
+        failuresToInject.set(count);
+    }
+
+    public int uploadAttempts() {
+        return uploadAttempts.get();
+    }
+
+    public Set<String> deletedImages() {
+        return deletedImages;
+    }
+
+    public boolean isStored(String publicId) {
+        return Files.exists(stored(publicId));
+    }
+
+    public void reset() {
+        failuresToInject.set(0);
+        uploadAttempts.set(0);
+        deletedImages.clear();
+    }
+
+    private Path stored(String publicId) {
+        return root.resolve(publicId);
+    }
+}
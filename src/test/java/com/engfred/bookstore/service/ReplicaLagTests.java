@@ -0,0 +1,194 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.request.UpdateBookRequest;
+import com.engfred.bookstore.dto.request.UpdateUserRequest;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/*
+ * A replica that never catches up: rows are copied to it once and the writes made through the services stay on the
+ * primary. The books and authors caches serve every user, so whatever fills them must read the primary, and a delete
+ * releases the cover the primary's row holds. Skipped when Docker isn't available.
+ */
+@SpringBootTest(properties = {
+        "spring.flyway.enabled=true",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class ReplicaLagTests {
+
+    @Container
+    static PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void dataSources(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", primary::getJdbcUrl);
+        registry.add("spring.datasource.username", primary::getUsername);
+        registry.add("spring.datasource.password", primary::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+        registry.add("bookstore.datasource.replica.jdbc-url", replica::getJdbcUrl);
+        registry.add("bookstore.datasource.replica.username", replica::getUsername);
+        registry.add("bookstore.datasource.replica.password", replica::getPassword);
+        //Longer than the tests, a writer stays on the primary throughout: each test writes as an author of its own
+        registry.add("bookstore.datasource.replica.sticky-for", () -> "1h");
+    }
+
+    @BeforeAll
+    static void migrateReplica() {
+        Flyway.configure().dataSource(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword()).load().migrate();
+    }
+
+    @MockitoBean
+    private CloudinaryService cloudinaryService;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository, cacheManager);
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replicaDataSource);
+        replicaJdbc.update("DELETE FROM books");
+        replicaJdbc.update("DELETE FROM users");
+    }
+
+    //Saved on the primary and copied to the replica with the same ids, as replication would have
+    private Book seed(String email, String title, String coverImagePublicId) {
+        User author = userRepository.save(TestData.author("Chinua", "Achebe", email).build());
+        Book book = booksRepository.save(TestData.book(author, title, "isbn-" + email).coverImagePublicId(coverImagePublicId).build());
+
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replicaDataSource);
+        replicaJdbc.update("""
+                INSERT INTO users (id, firstname, lastname, email, phone_number, address, password, gender, created_at, updated_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, now(), now())
+                """, author.getId(), author.getFirstname(), author.getLastname(), author.getEmail(), author.getPhoneNumber(),
+                author.getAddress(), author.getPassword(), author.getGender().name());
+        replicaJdbc.update("""
+                INSERT INTO books (id, title, genre, pages, published_at, isbn, cover_image_public_id, created_at, updated_at, author_id)
+                VALUES (?, ?, ?, ?, ?, ?, ?, now(), now(), ?)
+                """, book.getId(), book.getTitle(), book.getGenre(), book.getPages(), new Timestamp(book.getPublishedAt().getTime()),
+                book.getIsbn(), book.getCoverImagePublicId(), author.getId());
+        return book;
+    }
+
+    private static void signIn(String email) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(email, null, List.of()));
+    }
+
+    private String replicaTitle(Book book) {
+        return new JdbcTemplate(replicaDataSource).queryForObject("SELECT title FROM books WHERE id = ?", String.class, book.getId());
+    }
+
+    @Test
+    void anotherUserNeverGetsTheBookAsItWasBeforeAnUpdate() throws Exception {
+        Book book = seed("things.fall.apart@bookstore.test", "Things Fall Apart", null);
+        signIn("reader@bookstore.test");
+        assertThat(booksService.getBookById(book.getId()).getTitle()).isEqualTo("Things Fall Apart");
+
+        UpdateBookRequest request = new UpdateBookRequest();
+        request.setTitle("No Longer at Ease");
+        signIn("things.fall.apart@bookstore.test");
+        booksService.updateBook(request, book.getId());
+
+        //The replica still has the old title, the cache is refilled from the primary all the same
+        signIn("reader@bookstore.test");
+        assertThat(replicaTitle(book)).isEqualTo("Things Fall Apart");
+        assertThat(booksService.getAllBooks(1, 10, "title").getContent()).extracting(BookDto::getTitle)
+                .containsExactly("Things Fall Apart");
+        assertThat(booksService.getBookById(book.getId()).getTitle()).isEqualTo("No Longer at Ease");
+        SecurityContextHolder.clearContext();
+        assertThat(booksService.getBookById(book.getId()).getTitle()).isEqualTo("No Longer at Ease");
+    }
+
+    @Test
+    void anotherUserNeverGetsTheAuthorAsTheyWereBeforeAnUpdate() throws Exception {
+        Book book = seed("arrow.of.god@bookstore.test", "Arrow of God", null);
+        signIn("reader@bookstore.test");
+        assertThat(userService.getUserById(book.getAuthor().getId()).getFirstname()).isEqualTo("Chinua");
+
+        signIn("arrow.of.god@bookstore.test");
+        userService.updateUser(UpdateUserRequest.builder().firstname("Albert").build());
+
+        signIn("reader@bookstore.test");
+        assertThat(userService.getUserById(book.getAuthor().getId()).getFirstname()).isEqualTo("Albert");
+        assertThat(booksService.getBookById(book.getId()).getAuthor().getFirstname()).isEqualTo("Albert");
+    }
+
+    @Test
+    void deleteReleasesTheCoverThePrimaryHolds() throws Exception {
+        Book book = seed("anthills@bookstore.test", "Anthills of the Savannah", "covers/current");
+        new JdbcTemplate(replicaDataSource).update("UPDATE books SET cover_image_public_id = 'covers/replaced' WHERE id = ?", book.getId());
+
+        //The author hasn't written yet, nothing but the delete itself keeps its lookup off the replica
+        signIn("anthills@bookstore.test");
+        booksService.deleteBook(book.getId());
+
+        assertThat(booksRepository.existsById(book.getId())).isFalse();
+        verify(cloudinaryService, times(1)).deleteImage(anyString());
+        verify(cloudinaryService).deleteImage("covers/current");
+    }
+
+    @Test
+    void deletingAnAuthorTheReplicaHasNotSeenReleasesTheirCovers() throws Exception {
+        Book book = seed("a.man.of.the.people@bookstore.test", "A Man of the People", "covers/new");
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replicaDataSource);
+        replicaJdbc.update("DELETE FROM books");
+        replicaJdbc.update("DELETE FROM users");
+
+        signIn("a.man.of.the.people@bookstore.test");
+        userService.deleteUser();
+
+        assertThat(userRepository.existsById(book.getAuthor().getId())).isFalse();
+        verify(cloudinaryService).deleteImage("covers/new");
+    }
+}
@@ -0,0 +1,155 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Read replica routing against two PostgreSQL containers, migrated alike but seeded apart so every read shows which
+ * one served it: read-only service transactions go to the replica, except for a user who just committed a write.
+ * Skipped when Docker isn't available.
+ */
+@SpringBootTest(properties = {
+        "spring.flyway.enabled=true",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class ReplicaRoutingTests {
+
+    @Container
+    static PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void dataSources(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", primary::getJdbcUrl);
+        registry.add("spring.datasource.username", primary::getUsername);
+        registry.add("spring.datasource.password", primary::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+        registry.add("bookstore.datasource.replica.jdbc-url", replica::getJdbcUrl);
+        registry.add("bookstore.datasource.replica.username", replica::getUsername);
+        registry.add("bookstore.datasource.replica.password", replica::getPassword);
+        //Longer than the tests, a writer stays on the primary throughout: each test signs in as users of its own
+        registry.add("bookstore.datasource.replica.sticky-for", () -> "1h");
+    }
+
+    //Replication would copy the primary's schema, here the replica is migrated on its own
+    @BeforeAll
+    static void migrateReplica() {
+        Flyway.configure().dataSource(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword()).load().migrate();
+    }
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    @BeforeEach
+    void seed() {
+        User author = userRepository.save(TestData.author("Primary", "Author", "primary.author@bookstore.test").build());
+        booksRepository.save(TestData.book(author, "On the Primary", "isbn-primary").build());
+
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replicaDataSource);
+        replicaJdbc.update("""
+                INSERT INTO users (id, firstname, lastname, email, phone_number, address, password, gender, created_at, updated_at)
+                VALUES (gen_random_uuid(), 'Replica', 'Author', 'replica.author@bookstore.test', '+256700000000',
+                        'Kampala', 'secret', 'PREFER_NOT_TO_SAY', now(), now())
+                """);
+        replicaJdbc.update("""
+                INSERT INTO books (id, title, genre, pages, published_at, isbn, created_at, updated_at, author_id)
+                SELECT gen_random_uuid(), 'On the Replica', 'Fiction', 100, now(), 'isbn-replica', now(), now(), id
+                FROM users
+                """);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository);
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replicaDataSource);
+        replicaJdbc.update("DELETE FROM books");
+        replicaJdbc.update("DELETE FROM users");
+    }
+
+    private List<String> listedTitles() {
+        return booksService.getAllBooks(1, 10, "title").getContent().stream().map(BookDto::getTitle).toList();
+    }
+
+    private static void signIn(String email) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(email, null, List.of()));
+    }
+
+    @Test
+    void readOnlyServiceReadsComeFromTheReplica() {
+        assertThat(listedTitles()).containsExactly("On the Replica");
+
+        signIn("reader@bookstore.test");
+        assertThat(listedTitles()).containsExactly("On the Replica");
+    }
+
+    @Test
+    void aUserWhoJustWroteReadsFromThePrimary() {
+        signIn("writer@bookstore.test");
+        transactionTemplate.executeWithoutResult(status -> booksRepository.save(
+                TestData.book(userRepository.findByEmail("primary.author@bookstore.test").orElseThrow(), "Just Written", "isbn-written").build()));
+
+        assertThat(listedTitles()).containsExactly("Just Written", "On the Primary");
+
+        //Stickiness is per user, everyone else keeps reading the replica
+        signIn("reader@bookstore.test");
+        assertThat(listedTitles()).containsExactly("On the Replica");
+        SecurityContextHolder.clearContext();
+        assertThat(listedTitles()).containsExactly("On the Replica");
+    }
+
+    @Test
+    void readOnlyTransactionsDoNotMakeAUserSticky() {
+        signIn("counter@bookstore.test");
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> booksRepository.count());
+
+        assertThat(listedTitles()).containsExactly("On the Replica");
+    }
+}
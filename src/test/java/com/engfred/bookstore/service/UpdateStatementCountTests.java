@@ -0,0 +1,139 @@
+package com.engfred.bookstore.service;
+
+import com.engfred.bookstore.TestData;
+import com.engfred.bookstore.config.JdbcStatementCounter;
+import com.engfred.bookstore.data.entities.Book;
+import com.engfred.bookstore.data.entities.User;
+import com.engfred.bookstore.data.repository.BooksRepository;
+import com.engfred.bookstore.data.repository.UserRepository;
+import com.engfred.bookstore.dto.models.BookDto;
+import com.engfred.bookstore.dto.models.UserDto;
+import com.engfred.bookstore.dto.request.UpdateBookRequest;
+import com.engfred.bookstore.dto.request.UpdateUserRequest;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mockingDetails;
+
+//An update costs the lookup plus one UPDATE of the columns it changed, and nothing at all when nothing changed
+@SpringBootTest
+class UpdateStatementCountTests {
+
+    //Hibernate's statement inspector, spied for the SQL it is handed
+    @MockitoSpyBean
+    private JdbcStatementCounter statementCounter;
+
+    @Autowired
+    private BooksService booksService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BooksRepository booksRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private User author;
+    private Book book;
+
+    @BeforeEach
+    void seed() {
+        author = userRepository.save(TestData.author("Ngugi", "Thiong'o", "ngugi@bookstore.test").bio("Novelist").build());
+        book = booksRepository.save(TestData.book(author, "Weep Not, Child", "isbn-weep").description("A novel").build());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(author.getEmail(), null, List.of()));
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        clearInvocations(statementCounter);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        TestData.deleteAll(booksRepository, userRepository);
+    }
+
+    private List<String> updateStatements() {
+        return mockingDetails(statementCounter).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("inspect"))
+                .map(invocation -> invocation.<String>getArgument(0).toLowerCase(Locale.ROOT))
+                .filter(sql -> sql.startsWith("update"))
+                .toList();
+    }
+
+    @Test
+    void updateBookWritesOnlyTheChangedColumns() throws Exception {
+        UpdateBookRequest request = new UpdateBookRequest();
+        request.setTitle("The River Between");
+        request.setGenre(" Fiction ");
+
+        BookDto updated = booksService.updateBook(request, book.getId());
+
+        assertThat(updated.getTitle()).isEqualTo("The River Between");
+        assertThat(updated.getVersion()).isEqualTo(book.getVersion() + 1);
+        //The book joined with its author, then the update
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+        assertThat(updateStatements()).singleElement().satisfies(sql -> assertThat(sql)
+                .contains("title=", "updated_at=", "version=")
+                .doesNotContain("genre=", "isbn=", "description=", "pages=", "published_at=", "cover_image"));
+    }
+
+    @Test
+    void updateBookWithUnchangedValuesWritesNothing() throws Exception {
+        UpdateBookRequest request = new UpdateBookRequest();
+        request.setTitle(" Weep Not, Child ");
+        request.setDescription("A novel");
+        request.setPages(book.getPages());
+        request.setIsbn("isbn-weep");
+
+        BookDto updated = booksService.updateBook(request, book.getId());
+
+        assertThat(updated.getVersion()).isEqualTo(book.getVersion());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+        assertThat(updateStatements()).isEmpty();
+    }
+
+    @Test
+    void updateUserWritesOnlyTheChangedColumns() throws Exception {
+        UserDto updated = userService.updateUser(UpdateUserRequest.builder().bio("Playwright").lastname("Thiong'o").build());
+
+        assertThat(updated.getVersion()).isEqualTo(author.getVersion() + 1);
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+        assertThat(updateStatements()).singleElement().satisfies(sql -> assertThat(sql)
+                .contains("bio=", "updated_at=", "version=")
+                .doesNotContain("lastname=", "firstname=", "password=", "email=", "image_url=", "profile_image_public_id="));
+    }
+
+    @Test
+    void updateUserWithUnchangedValuesWritesNothing() throws Exception {
+        UserDto updated = userService.updateUser(UpdateUserRequest.builder().firstname("Ngugi").bio(" Novelist").build());
+
+        assertThat(updated.getVersion()).isEqualTo(author.getVersion());
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+        assertThat(updateStatements()).isEmpty();
+    }
+}
@@ -0,0 +1,74 @@
+-- Author search benchmark: 1M users, the statement Hibernate emits for UserRepository.searchByKeyword,
+-- timed without and then with the trigram indexes from db/migration/V6__users_trigram_search.sql.
+--
+--   psql -d bookstore_db -f src/test/resources/benchmark/author-search-1m.sql
+--
+-- Everything lives in its own schema, dropped at the end.
+
+\timing on
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+DROP SCHEMA IF EXISTS author_search_bench CASCADE;
+CREATE SCHEMA author_search_bench;
+SET search_path = author_search_bench, public;
+
+CREATE TABLE users (
+    id          uuid PRIMARY KEY,
+    firstname   varchar(100) NOT NULL,
+    lastname    varchar(100),
+    email       varchar(100) NOT NULL UNIQUE,
+    created_at  timestamp(6)
+);
+
+INSERT INTO users (id, firstname, lastname, email, created_at)
+SELECT gen_random_uuid(),
+       (ARRAY['Amos','Brenda','Chinua','Dorothy','Esther','Fred','Grace','Hamid','Ivan','Joyce',
+              'Kato','Lydia','Moses','Nalule','Okello','Patience','Ruth','Samuel','Tendo','Winnie'])[1 + (n % 20)]
+           || (n % 997),
+       (ARRAY['Achebe','Baldwin','Chimamanda','Dangarembga','Emecheta','Farah','Gordimer','Head',
+              'Isegawa','Kahiga','Laye','Mwangi','Ngugi','Okri','Soyinka','Tutuola'])[1 + (n % 16)]
+           || (n % 1013),
+       'author' || n || '@bookstore.test',
+       now() - (n || ' seconds')::interval
+FROM generate_series(1, 1000000) AS n;
+
+ANALYZE users;
+
+-- Shape of the statement generated for searchByKeyword (page 1, size 10, sort by firstname)
+PREPARE author_search(text) AS
+    SELECT u.id, u.firstname, u.lastname, u.email
+    FROM users u
+    WHERE lower(u.firstname) LIKE lower('%' || $1 || '%')
+       OR lower(u.lastname) LIKE lower('%' || $1 || '%')
+       OR lower(u.email) LIKE lower('%' || $1 || '%')
+    ORDER BY u.firstname
+    OFFSET 0 ROWS FETCH FIRST 10 ROWS ONLY;
+
+PREPARE author_search_count(text) AS
+    SELECT count(u.id)
+    FROM users u
+    WHERE lower(u.firstname) LIKE lower('%' || $1 || '%')
+       OR lower(u.lastname) LIKE lower('%' || $1 || '%')
+       OR lower(u.email) LIKE lower('%' || $1 || '%');
+
+-- 1. Without indexes: parallel sequential scans over the full table
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE author_search('dangar');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE author_search_count('dangar');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE author_search('author4242@');
+
+CREATE INDEX idx_users_firstname_trgm ON users USING GIN (lower(firstname) gin_trgm_ops);
+CREATE INDEX idx_users_lastname_trgm ON users USING GIN (lower(lastname) gin_trgm_ops);
+CREATE INDEX idx_users_email_trgm ON users USING GIN (lower(email) gin_trgm_ops);
+ANALYZE users;
+
+-- 2. With indexes: BitmapOr over the three trigram indexes
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE author_search('dangar');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE author_search_count('dangar');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE author_search('author4242@');
+
+-- Keywords shorter than three characters have no trigram and still scan the table
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE author_search('ok');
+
+DEALLOCATE ALL;
+RESET search_path;
+DROP SCHEMA author_search_bench CASCADE;
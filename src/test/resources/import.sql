@@ -0,0 +1,4 @@
+-- Run by Hibernate once it has created the schema, in place of db/migration/V8__catalogue_version.sql
+INSERT INTO catalogue_version (id, version) VALUES (1, 0);
+CREATE TRIGGER books_catalogue_version_trigger AFTER INSERT, UPDATE, DELETE ON books FOR EACH STATEMENT CALL 'com.engfred.bookstore.data.repository.CatalogueVersionTrigger';
+CREATE TRIGGER users_catalogue_version_trigger AFTER UPDATE ON users FOR EACH ROW CALL 'com.engfred.bookstore.data.repository.CatalogueVersionTrigger';